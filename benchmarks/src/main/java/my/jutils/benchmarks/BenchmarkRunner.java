@@ -0,0 +1,30 @@
+package my.jutils.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Entry point of the shaded benchmarks jar.
+ * <p>
+ * This accepts the same arguments as JMH's own {@code Main}, but always
+ * measures throughput and attaches the GC profiler, so every run reports the
+ * allocation rate ({@code gc.alloc.rate.norm}) next to the ops/s score.
+ * <br />
+ * Eg. <i>java -jar target/benchmarks.jar StringsBenchmark -f 1</i>
+ *
+ * @author Erieze Lagera
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .mode(Mode.Throughput)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
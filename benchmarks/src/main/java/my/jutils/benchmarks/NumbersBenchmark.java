@@ -0,0 +1,200 @@
+package my.jutils.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import my.jutils.Numbers;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for {@link Numbers}.
+ * <p>
+ * Inputs are parameterized by {@code value}, so both the happy path and the
+ * fallback path (invalid number, which logs and returns the default value)
+ * are measured.
+ * <br />
+ * Note: <i>{@code getIntValue} and {@code getDoubleValue} were not included
+ * since they are waiting for a {@code JOptionPane} input.</i>
+ *
+ * @author Erieze Lagera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumbersBenchmark {
+
+    @Param({"12", "1234567", "12a"})
+    public String value;
+
+    private BigDecimal decimal;
+    private Double dbl;
+
+    @Setup
+    public void setup() {
+        decimal = Numbers.toBigDecimal(value, new BigDecimal("1234.50"));
+        dbl = decimal.doubleValue();
+    }
+
+    @Benchmark
+    public int parseInt() {
+        return Numbers.parseInt(value);
+    }
+
+    @Benchmark
+    public int parseIntDflt() {
+        return Numbers.parseInt(value, -1);
+    }
+
+    @Benchmark
+    public long parseLong() {
+        return Numbers.parseLong(value);
+    }
+
+    @Benchmark
+    public long parseLongDflt() {
+        return Numbers.parseLong(value, -1L);
+    }
+
+    @Benchmark
+    public double parseDouble() {
+        return Numbers.parseDouble(value);
+    }
+
+    @Benchmark
+    public double parseDoubleDflt() {
+        return Numbers.parseDouble(value, -1.0);
+    }
+
+    @Benchmark
+    public byte parseByte() {
+        return Numbers.parseByte(value);
+    }
+
+    @Benchmark
+    public byte parseByteDflt() {
+        return Numbers.parseByte(value, (byte) -1);
+    }
+
+    @Benchmark
+    public BigDecimal toBigDecimal() {
+        return Numbers.toBigDecimal(value);
+    }
+
+    @Benchmark
+    public BigDecimal toBigDecimalDflt() {
+        return Numbers.toBigDecimal(value, BigDecimal.ONE);
+    }
+
+    @Benchmark
+    public BigDecimal zeroBigDecimal() {
+        return Numbers.zeroBigDecimal();
+    }
+
+    @Benchmark
+    public int toIntLong() {
+        return Numbers.toInt(1234567L);
+    }
+
+    @Benchmark
+    public int toIntDouble() {
+        return Numbers.toInt(1234.567d);
+    }
+
+    @Benchmark
+    public String toCurrencyFormat() {
+        return Numbers.toCurrencyFormat(decimal);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return Numbers.get(value.length() - 3, 1);
+    }
+
+    @Benchmark
+    public long getLong() {
+        return Numbers.get((long) value.length() - 3, 1L);
+    }
+
+    @Benchmark
+    public BigDecimal getBigDecimal() {
+        return Numbers.get(decimal, BigDecimal.ONE);
+    }
+
+    @Benchmark
+    public BigDecimal getString() {
+        return Numbers.get(value, BigDecimal.ONE);
+    }
+
+    @Benchmark
+    public boolean isNaturalNumber() {
+        return Numbers.isNaturalNumber(value.length());
+    }
+
+    @Benchmark
+    public boolean isNaturalInteger() {
+        return Numbers.isNaturalInteger(value);
+    }
+
+    @Benchmark
+    public int parseToInt() {
+        return Numbers.parseToInt(value, -1);
+    }
+
+    @Benchmark
+    public boolean isNaturalDouble() {
+        return Numbers.isNaturalDouble(value);
+    }
+
+    @Benchmark
+    public boolean isOnlyNum() {
+        return Numbers.isOnlyNum(value);
+    }
+
+    @Benchmark
+    public String toNumberFormat() {
+        return Numbers.toNumberFormat(decimal);
+    }
+
+    @Benchmark
+    public String toNumberFormatInt() {
+        return Numbers.toNumberFormat(1234567);
+    }
+
+    @Benchmark
+    public int add() {
+        return Numbers.add(value, 34);
+    }
+
+    @Benchmark
+    public int addStr() {
+        return Numbers.add(value, "34");
+    }
+
+    @Benchmark
+    public String format() {
+        return Numbers.format(decimal);
+    }
+
+    @Benchmark
+    public String formatScale() {
+        return Numbers.format(dbl, 2);
+    }
+
+    @Benchmark
+    public String formatStr() {
+        return Numbers.formatStr(decimal.toPlainString());
+    }
+
+    @Benchmark
+    public String formatStrScale() {
+        return Numbers.formatStr(value, 2);
+    }
+
+    @Benchmark
+    public BigDecimal safeReturn() {
+        return Numbers.safeReturn(decimal);
+    }
+
+}
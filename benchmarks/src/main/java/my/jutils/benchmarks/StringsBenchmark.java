@@ -0,0 +1,224 @@
+package my.jutils.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import my.jutils.Strings;
+import my.jutils.Strings.FillPosition;
+import my.jutils.Strings.NormalizeType;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for {@link Strings}.
+ * <p>
+ * Inputs are parameterized by {@code length}, which is the size of the text
+ * given to the character processing methods, and by {@code placeholders},
+ * which is the number of <i>$placeholders</i> inside the text given to
+ * {@code mapParams}.
+ * <br />
+ * Note: <i>{@code isOnlyNum(String, String)} was not included since it shows
+ * a {@code JOptionPane} on invalid input.</i>
+ *
+ * @author Erieze Lagera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringsBenchmark {
+
+    @Param({"16", "256"})
+    public int length;
+
+    @Param({"1", "10"})
+    public int placeholders;
+
+    private String text;
+    private char[] chars;
+    private String[] words;
+    private String template;
+    private Map<String, Object> params;
+    private String url;
+
+    @Setup
+    public void setup() {
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append("lorem ipsum ");
+        }
+        text = sb.substring(0, length);
+        chars = text.toCharArray();
+        words = text.split(" ");
+
+        final StringBuilder tb = new StringBuilder("Dear customer,");
+        params = new HashMap<>();
+        for (int i = 0; i < placeholders; i++) {
+            tb.append(" your item $item").append(i).append(" is ready.");
+            params.put("item" + i, "PRODUCT-" + i);
+        }
+        template = tb.toString();
+        url = "jdbc:postgresql://192.168.1.100:5432/jdatabase";
+    }
+
+    @Benchmark
+    public String toUpCaseFirst() {
+        return Strings.toUpCaseFirst(text);
+    }
+
+    @Benchmark
+    public String toUpCaseFirstEveryWord() {
+        return Strings.toUpCaseFirstEveryWord(text);
+    }
+
+    @Benchmark
+    public String toAltCaseUpFirst() {
+        return Strings.toAltCaseUpFirst(text);
+    }
+
+    @Benchmark
+    public String toAltCaseLowFirst() {
+        return Strings.toAltCaseLowFirst(text);
+    }
+
+    @Benchmark
+    public String charArrToStr() {
+        return Strings.charArrToStr(chars);
+    }
+
+    @Benchmark
+    public String strReverse() {
+        return Strings.strReverse(text);
+    }
+
+    @Benchmark
+    public String reSubstring() {
+        return Strings.reSubstring(text, length / 2);
+    }
+
+    @Benchmark
+    public String reSubstringRange() {
+        return Strings.reSubstring(text, length - 1, length / 2);
+    }
+
+    @Benchmark
+    public String split() {
+        return Strings.split(words, words.length - 1);
+    }
+
+    @Benchmark
+    public String normalizeName() {
+        return Strings.normalizeName("Juan", "Santos", "Dela Cruz", NormalizeType.LastFirstMiddle);
+    }
+
+    @Benchmark
+    public String fill() {
+        return Strings.fill("12", "0", length, FillPosition.Start);
+    }
+
+    @Benchmark
+    public String fillInt() {
+        return Strings.fill(12, 0, length, FillPosition.Start);
+    }
+
+    @Benchmark
+    public String concatenateArray() {
+        return Strings.concatenateArray('a', 'b');
+    }
+
+    @Benchmark
+    public String space() {
+        return Strings.space(length);
+    }
+
+    @Benchmark
+    public String spaceFill() {
+        return Strings.space("name", length, FillPosition.End);
+    }
+
+    @Benchmark
+    public boolean isOnlyNum() {
+        return Strings.isOnlyNum("1234567");
+    }
+
+    @Benchmark
+    public String mapParams() {
+        return Strings.mapParams(template, params);
+    }
+
+    @Benchmark
+    public boolean isPlaceholder() {
+        return Strings.isPlaceholder("$item0");
+    }
+
+    @Benchmark
+    public boolean isPlaceholderChar() {
+        return Strings.isPlaceholder("#item0", '#');
+    }
+
+    @Benchmark
+    public String getMapValue() {
+        return Strings.getMapValue("$item0", params);
+    }
+
+    @Benchmark
+    public String getRandomString() {
+        return Strings.getRandomString(words);
+    }
+
+    @Benchmark
+    public String get() {
+        return Strings.get(text, "");
+    }
+
+    @Benchmark
+    public String getObject() {
+        return Strings.get((Object) length, "");
+    }
+
+    @Benchmark
+    public String extractIPv4() {
+        return Strings.extractIPv4(url);
+    }
+
+    @Benchmark
+    public String html() {
+        return Strings.html(text);
+    }
+
+    @Benchmark
+    public String htmlItalic() {
+        return Strings.htmlItalic(text);
+    }
+
+    @Benchmark
+    public String htmlBold() {
+        return Strings.htmlBold(text);
+    }
+
+    @Benchmark
+    public String htmlUnderline() {
+        return Strings.htmlUnderline(text);
+    }
+
+    @Benchmark
+    public boolean getBoolean() {
+        return Strings.getBoolean("Yes");
+    }
+
+    @Benchmark
+    public boolean getBooleanDflt() {
+        return Strings.getBoolean("False", true);
+    }
+
+    @Benchmark
+    public String add() {
+        return Strings.add("1200", 34);
+    }
+
+    @Benchmark
+    public String addStr() {
+        return Strings.add("1200", "34");
+    }
+
+}
@@ -0,0 +1,332 @@
+package my.jutils.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import my.jutils.Times;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for {@link Times}.
+ * <p>
+ * Inputs are parameterized by {@code dateFormat}, which is the pattern given
+ * to the formatting and parsing methods.
+ * <br />
+ * Note: <i>{@code getHourInTime} and {@code convertTimeToInt} were not
+ * included since they currently throw {@code StringIndexOutOfBoundsException}
+ * for any input.</i>
+ *
+ * @author Erieze Lagera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimesBenchmark {
+
+    @Param({"MM/dd/yyyy", "EEE MMM dd yyyy hh:mm:ss a"})
+    public String dateFormat;
+
+    private Date date;
+    private DateTime dateTime;
+    private String formatted;
+    private BigDecimal duration;
+
+    @Setup
+    public void setup() {
+        dateTime = new DateTime(1992, 10, 23, 9, 9, 9);
+        date = dateTime.toDate();
+        formatted = dateTime.toString(dateFormat);
+        duration = new BigDecimal("123456789");
+    }
+
+    @Benchmark
+    public Date getTemporalYMDHM() {
+        return Times.getTemporalYMDHM(date);
+    }
+
+    @Benchmark
+    public Date getTemporalYMD() {
+        return Times.getTemporalYMD(date);
+    }
+
+    @Benchmark
+    public boolean isWeekendDateTime() {
+        return Times.isWeekend(dateTime);
+    }
+
+    @Benchmark
+    public boolean isWeekend() {
+        return Times.isWeekend(date);
+    }
+
+    @Benchmark
+    public boolean isWeekdayDateTime() {
+        return Times.isWeekday(dateTime);
+    }
+
+    @Benchmark
+    public boolean isWeekday() {
+        return Times.isWeekday(date);
+    }
+
+    @Benchmark
+    public String getDayTodayString() {
+        return Times.getDayTodayString();
+    }
+
+    @Benchmark
+    public boolean isTimeout() {
+        return Times.isTimeout(date.getTime() + 5000, date.getTime(), 3);
+    }
+
+    @Benchmark
+    public BigDecimal durationToHourBigDecimal() {
+        return Times.durationToHourBigDecimal(duration);
+    }
+
+    @Benchmark
+    public boolean isStringInDateFormat() {
+        return Times.isStringInDateFormat(formatted, dateFormat);
+    }
+
+    @Benchmark
+    public Integer durationToMinuteInt() {
+        return Times.durationToMinuteInt(duration);
+    }
+
+    @Benchmark
+    public int millisToSeconds() {
+        return Times.millisToSeconds(123456);
+    }
+
+    @Benchmark
+    public int millisToSecondsLong() {
+        return Times.millisToSeconds(123456789L);
+    }
+
+    @Benchmark
+    public long secondsToMillis() {
+        return Times.secondsToMillis(3600);
+    }
+
+    @Benchmark
+    public long secondsToMinute() {
+        return Times.secondsToMinute(3600);
+    }
+
+    @Benchmark
+    public long secondsToHour() {
+        return Times.secondsToHour(3600);
+    }
+
+    @Benchmark
+    public int minuteToMillis() {
+        return Times.minuteToMillis(90);
+    }
+
+    @Benchmark
+    public int minuteToSeconds() {
+        return Times.minuteToSeconds(90);
+    }
+
+    @Benchmark
+    public long hourToMillis() {
+        return Times.hourToMillis(12);
+    }
+
+    @Benchmark
+    public long hourToSeconds() {
+        return Times.hourToSeconds(12);
+    }
+
+    @Benchmark
+    public Time getTimeToTime() {
+        return Times.getTimeToTime();
+    }
+
+    @Benchmark
+    public String toDateFormat() {
+        return Times.toDateFormat(date, dateFormat);
+    }
+
+    @Benchmark
+    public String toDateFormatDateTime() {
+        return Times.toDateFormat(dateTime, dateFormat);
+    }
+
+    @Benchmark
+    public String toDateFormatToday() {
+        return Times.toDateFormat(dateFormat);
+    }
+
+    @Benchmark
+    public Date toDateFormatDflt() {
+        return Times.toDateFormat(date, dateFormat, date);
+    }
+
+    @Benchmark
+    public String toDateFormatMillis() {
+        return Times.toDateFormat(123456789L);
+    }
+
+    @Benchmark
+    public Integer durationToHourInt() {
+        return Times.durationToHourInt(duration);
+    }
+
+    @Benchmark
+    public Date getDateWithTime() {
+        return Times.getDateWithTime(date, "09:30pm");
+    }
+
+    @Benchmark
+    public String getDayOfWeekName() {
+        return Times.getDayOfWeekName(date);
+    }
+
+    @Benchmark
+    public int getDayOfWeek() {
+        return Times.getDayOfWeek(date);
+    }
+
+    @Benchmark
+    public boolean compareDateTime() {
+        return Times.compareDateTime(dateTime, dateTime.plusHours(1));
+    }
+
+    @Benchmark
+    public String putZeroInTime() {
+        return Times.putZeroInTime("09:30");
+    }
+
+    @Benchmark
+    public Integer getDateTodayInt() {
+        return Times.getDateTodayInt("MMddyyyy");
+    }
+
+    @Benchmark
+    public int getHourFromTime() {
+        return Times.getHourFromTime("09:30");
+    }
+
+    @Benchmark
+    public int getHrFromDate() {
+        return Times.getHrFromDate(formatted, dateFormat, true);
+    }
+
+    @Benchmark
+    public String getHrFromDateStr() {
+        return Times.getHrFromDateStr(formatted, dateFormat, false);
+    }
+
+    @Benchmark
+    public String getMinutesInTime() {
+        return Times.getMinutesInTime("09:30");
+    }
+
+    @Benchmark
+    public int getMinutesFromTime() {
+        return Times.getMinutesFromTime("09:30");
+    }
+
+    @Benchmark
+    public int getMinFromDate() {
+        return Times.getMinFromDate(formatted, dateFormat);
+    }
+
+    @Benchmark
+    public String getMinFromDateStr() {
+        return Times.getMinFromDateStr(formatted, dateFormat);
+    }
+
+    @Benchmark
+    public DateTime toDateTime() {
+        return Times.toDateTime(formatted, dateFormat);
+    }
+
+    @Benchmark
+    public Date toDate() {
+        return Times.toDate(formatted, dateFormat);
+    }
+
+    @Benchmark
+    public boolean isTimeTwelveHourFormat() {
+        return Times.isTimeTwelveHourFormat("09:30 PM");
+    }
+
+    @Benchmark
+    public Date setTimeFromDate() {
+        return Times.setTimeFromDate(date, "21:30", true);
+    }
+
+    @Benchmark
+    public int getHrFromDateDate() {
+        return Times.getHrFromDate(date);
+    }
+
+    @Benchmark
+    public Date plusDay() {
+        return Times.plusDay(date, 1);
+    }
+
+    @Benchmark
+    public Date minusDay() {
+        return Times.minusDay(date, 1);
+    }
+
+    @Benchmark
+    public Date plusHour() {
+        return Times.plusHour(date, 1);
+    }
+
+    @Benchmark
+    public Date minusHour() {
+        return Times.minusHour(date, 1);
+    }
+
+    @Benchmark
+    public Date plusMinute() {
+        return Times.plusMinute(date, 1);
+    }
+
+    @Benchmark
+    public Date minusMinute() {
+        return Times.minusMinute(date, 1);
+    }
+
+    @Benchmark
+    public Date convertMillisToDate() {
+        return Times.convertMillisToDate(date.getTime());
+    }
+
+    @Benchmark
+    public int getSecondsDifference() {
+        return Times.getSecondsDifference(date, dateTime.plusMinutes(5).toDate());
+    }
+
+    @Benchmark
+    public int getIntTimeFromDate() {
+        return Times.getIntTimeFromDate(date);
+    }
+
+    @Benchmark
+    public int convertStringTimeToInt() {
+        return Times.convertStringTimeToInt("09:30");
+    }
+
+    @Benchmark
+    public Date get() {
+        return Times.get(date, null);
+    }
+
+    @Benchmark
+    public Date getObject() {
+        return Times.get((Object) date, null);
+    }
+
+}
@@ -0,0 +1,367 @@
+package my.jutils.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import org.slf4j.*;
+
+/**
+ * Batched bulk writer for a single table.
+ * <p>
+ * Rows are written in batches of {@code batchSize}, either thru JDBC
+ * {@code addBatch/executeBatch} ({@link Mode#Batch}) or as one multi-row
+ * <b>INSERT ... VALUES (..), (..)</b> statement per batch
+ * ({@link Mode#MultiRow}). If {@code commitEvery} is greater than zero, the
+ * writer disables auto-commit and commits every time at least
+ * {@code commitEvery} rows were written since the last commit.
+ * <br />
+ * Each invocation of {@code insert} returns its {@link Stats}, which includes
+ * rows per second and per-batch latency.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final BulkInsert bulk = new BulkInsert(conn, "product", Arrays.asList("code", "name")); <br />
+ * bulk.setBatchSize(1000); <br />
+ * bulk.setCommitEvery(50000); <br />
+ * final BulkInsert.Stats stats = bulk.insert(rows);
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class BulkInsert {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkInsert.class.getSimpleName());
+
+    /**
+     * Maximum bind parameters in one statement supported by PostgreSQL.
+     */
+    private static final int MAX_PARAMETERS = 32767;
+
+    private final Connection conn;
+    private final String table;
+    private final List<String> columns;
+
+    private Mode mode;
+    private int batchSize;
+    private int commitEvery;
+
+    /**
+     * Create new bulk writer.
+     * <p>
+     * Default is {@link Mode#Batch} with batches of 500 rows and no explicit
+     * commit.
+     *
+     * @param conn Connection to be used, this will not be closed by the writer
+     * @param table Your table/entity name
+     * @param columns Columns to be written, in the same order of the row values
+     */
+    public BulkInsert(Connection conn, String table, List<String> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("BulkInsert -> [ERROR] columns must not be empty.");
+        }
+        this.conn = conn;
+        this.table = table;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.mode = Mode.Batch;
+        this.batchSize = 500;
+    }
+
+    /**
+     * How rows are sent to the database.
+     */
+    public static enum Mode {
+
+        /**
+         * One parameterized INSERT, executed thru JDBC
+         * {@code addBatch/executeBatch}.
+         */
+        Batch,
+        /**
+         * One multi-row INSERT statement per batch.
+         */
+        MultiRow
+    }
+
+    /**
+     * Convert an item to the column values of a row.
+     *
+     * @param <T> Type of the item
+     */
+    public static interface RowMapper<T> {
+
+        /**
+         * Map the item to row values.
+         *
+         * @param item Item to be written
+         * @return Values in the same order of the columns
+         */
+        public Object[] map(T item);
+
+    }
+
+    /**
+     * Write the given rows.
+     *
+     * @param rows Row values in the same order of the columns
+     * @return Statistics of this run
+     * @throws SQLException If a batch failed, uncommitted rows are rolled back
+     */
+    public Stats insert(Iterable<Object[]> rows) throws SQLException {
+        return insert(rows, new RowMapper<Object[]>() {
+            @Override
+            public Object[] map(Object[] item) {
+                return item;
+            }
+        });
+    }
+
+    /**
+     * Write the given items thru a row mapper.
+     *
+     * @param <T> Type of the items
+     * @param items Items to be written
+     * @param mapper Converts each item to the row values
+     * @return Statistics of this run
+     * @throws SQLException If a batch failed, uncommitted rows are rolled back
+     */
+    public <T> Stats insert(Iterable<T> items, RowMapper<? super T> mapper) throws SQLException {
+        final int size = effectiveBatchSize();
+        final Stats stats = new Stats();
+        final boolean autoCommit = conn.getAutoCommit();
+        final boolean manualCommit = commitEvery > 0;
+        if (manualCommit && autoCommit) {
+            conn.setAutoCommit(false);
+        }
+        final List<Object[]> buffer = new ArrayList<>(size);
+        int uncommitted = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(mode == Mode.Batch
+                ? SQLUtils.insertQuery(columns, table, 1)
+                : SQLUtils.insertQuery(columns, table, size))) {
+            for (T item : items) {
+                final Object[] row = mapper.map(item);
+                if (row.length != columns.size()) {
+                    throw new SQLException("BulkInsert -> [ERROR] Expected " + columns.size() + " values but got " + row.length + ".", "22023");
+                }
+                buffer.add(row);
+                if (buffer.size() == size) {
+                    uncommitted += flush(stmt, buffer, stats);
+                    if (manualCommit && uncommitted >= commitEvery) {
+                        conn.commit();
+                        uncommitted = 0;
+                    }
+                }
+            }
+            if (!buffer.isEmpty()) {
+                if (mode == Mode.Batch) {
+                    flush(stmt, buffer, stats);
+                } else {
+                    try (PreparedStatement tail = conn.prepareStatement(SQLUtils.insertQuery(columns, table, buffer.size()))) {
+                        flush(tail, buffer, stats);
+                    }
+                }
+            }
+            if (manualCommit) {
+                conn.commit();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (manualCommit) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LOGGER.error("Cause: {}", ex.toString(), ex);
+                }
+            }
+            LOGGER.error("Bulk insert into {} stopped after {} rows. Cause: {}", table, stats.getRows(), e.toString());
+            throw e;
+        } finally {
+            if (manualCommit && autoCommit) {
+                conn.setAutoCommit(true);
+            }
+            stats.finish();
+        }
+        LOGGER.info("Bulk insert into {} done: {}", table, stats);
+        return stats;
+    }
+
+    /**
+     * Send the buffered rows to the database.
+     *
+     * @return Number of rows sent
+     */
+    private int flush(PreparedStatement stmt, List<Object[]> buffer, Stats stats) throws SQLException {
+        final long start = System.nanoTime();
+        if (mode == Mode.Batch) {
+            for (Object[] row : buffer) {
+                for (int i = 0; i < row.length; i++) {
+                    stmt.setObject(i + 1, row[i]);
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } else {
+            int index = 1;
+            for (Object[] row : buffer) {
+                for (Object value : row) {
+                    stmt.setObject(index++, value);
+                }
+            }
+            stmt.executeUpdate();
+        }
+        final int rows = buffer.size();
+        buffer.clear();
+        stats.addBatch(rows, System.nanoTime() - start);
+        return rows;
+    }
+
+    /**
+     * Batch size capped, so that a multi-row statement does not exceed the
+     * bind parameter limit.
+     */
+    private int effectiveBatchSize() {
+        if (mode == Mode.MultiRow && batchSize * columns.size() > MAX_PARAMETERS) {
+            final int capped = MAX_PARAMETERS / columns.size();
+            LOGGER.warn("Batch size {} exceeds the bind parameter limit, using {} instead.", batchSize, capped);
+            return capped;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Statistics of a bulk insert run.
+     */
+    public static class Stats {
+
+        private final long start = System.nanoTime();
+        private long elapsed;
+        private long rows;
+        private int batches;
+        private long totalBatchNanos;
+        private long minBatchNanos = Long.MAX_VALUE;
+        private long maxBatchNanos;
+
+        private void addBatch(int rows, long nanos) {
+            this.rows += rows;
+            this.batches++;
+            this.totalBatchNanos += nanos;
+            this.minBatchNanos = Math.min(minBatchNanos, nanos);
+            this.maxBatchNanos = Math.max(maxBatchNanos, nanos);
+            LOGGER.debug("Batch #{} of {} rows took {} ms", batches, rows, nanos / 1000000d);
+        }
+
+        private void finish() {
+            this.elapsed = System.nanoTime() - start;
+        }
+
+        /**
+         * Total rows written.
+         *
+         * @return Rows
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * Total batches executed.
+         *
+         * @return Batches
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        /**
+         * Total time of the run, including commits.
+         *
+         * @return Elapsed time in millis
+         */
+        public double getElapsedMillis() {
+            return elapsed / 1000000d;
+        }
+
+        /**
+         * Throughput of the run.
+         *
+         * @return Rows per second
+         */
+        public double getRowsPerSecond() {
+            return elapsed == 0 ? 0 : rows / (elapsed / 1000000000d);
+        }
+
+        /**
+         * Average latency of a batch.
+         *
+         * @return Latency in millis
+         */
+        public double getAverageBatchMillis() {
+            return batches == 0 ? 0 : totalBatchNanos / (batches * 1000000d);
+        }
+
+        /**
+         * Fastest batch.
+         *
+         * @return Latency in millis
+         */
+        public double getMinBatchMillis() {
+            return batches == 0 ? 0 : minBatchNanos / 1000000d;
+        }
+
+        /**
+         * Slowest batch.
+         *
+         * @return Latency in millis
+         */
+        public double getMaxBatchMillis() {
+            return maxBatchNanos / 1000000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d, batches=%d, elapsed=%.1fms, rows/s=%.1f, batch(avg=%.2fms, min=%.2fms, max=%.2fms)",
+                    rows, batches, getElapsedMillis(), getRowsPerSecond(),
+                    getAverageBatchMillis(), getMinBatchMillis(), getMaxBatchMillis());
+        }
+    }
+
+    /**
+     * Set how rows are sent to the database.
+     *
+     * @param mode Write mode
+     * @return This writer
+     */
+    public BulkInsert setMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Set the number of rows per batch.
+     *
+     * @param batchSize Rows per batch
+     * @return This writer
+     */
+    public BulkInsert setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("BulkInsert -> [ERROR] batchSize must be greater than zero.");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the number of rows per commit.
+     * <p>
+     * Zero (0) leaves the transaction handling to the caller.
+     *
+     * @param commitEvery Rows per commit
+     * @return This writer
+     */
+    public BulkInsert setCommitEvery(int commitEvery) {
+        this.commitEvery = commitEvery;
+        return this;
+    }
+
+}
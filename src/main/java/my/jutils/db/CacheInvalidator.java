@@ -0,0 +1,188 @@
+package my.jutils.db;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.*;
+import javax.persistence.metamodel.EntityType;
+import org.postgresql.PGNotification;
+import org.slf4j.*;
+
+/**
+ * Invalidates the shared (L2) cache of {@link XPersist} thru Postgres
+ * <b>NOTIFY</b>.
+ * <p>
+ * Every process listens to the same channel thru a
+ * {@link PgNotificationDispatcher}. After a change is committed, the writer
+ * publishes the entity name (and the id if it is known) to the channel, and
+ * every process removes it from its cache. The payload is
+ * <i>EntityName</i> to evict every entity of the type, or
+ * <i>EntityName:id</i> to evict a single entity, so a database trigger may
+ * publish it as well:
+ * <br />
+ * <i>PERFORM pg_notify('cache_invalidation', 'Product:' || NEW.id);</i>
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final CacheInvalidator invalidator = new CacheInvalidator(dispatcher, "cache_invalidation"); <br />
+ * invalidator.start(); <br />
+ * // After committing a change <br />
+ * invalidator.publish(Product.class, product.getId());
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class CacheInvalidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidator.class.getSimpleName());
+
+    private final PgNotificationDispatcher dispatcher;
+    private final String channel;
+    private final PgNotificationDispatcher.Listener listener;
+    private final Map<String, EntityType<?>> entities;
+    private final AtomicLong evictions;
+
+    /**
+     * Create new invalidator.
+     *
+     * @param dispatcher Dispatcher of the notifications, this is not started
+     * nor stopped by the invalidator
+     * @param channel Channel name used by <b>NOTIFY</b>
+     */
+    public CacheInvalidator(PgNotificationDispatcher dispatcher, String channel) {
+        this.dispatcher = dispatcher;
+        this.channel = channel;
+        this.entities = new ConcurrentHashMap<>();
+        this.evictions = new AtomicLong();
+        this.listener = new PgNotificationDispatcher.Listener() {
+            @Override
+            public void notified(PGNotification notification) {
+                invalidate(notification.getParameter());
+            }
+        };
+    }
+
+    /**
+     * Start listening to the channel.
+     */
+    public void start() {
+        dispatcher.subscribe(channel, listener);
+    }
+
+    /**
+     * Stop listening to the channel.
+     */
+    public void stop() {
+        dispatcher.unsubscribe(channel, listener);
+    }
+
+    /**
+     * Evict the entity of a payload from the cache.
+     *
+     * @param payload <i>EntityName</i> or <i>EntityName:id</i>
+     */
+    public void invalidate(String payload) {
+        if (payload == null || payload.isEmpty() || XPersist.EMF == null || !XPersist.EMF.isOpen()) {
+            return;
+        }
+        final int colon = payload.indexOf(':');
+        final String name = colon == -1 ? payload : payload.substring(0, colon);
+        final EntityType<?> entity = entity(name);
+        if (entity == null) {
+            LOGGER.warn("Unknown entity {} from channel {}", name, channel);
+            return;
+        }
+        try {
+            final Object id = colon == -1 ? null : toId(payload.substring(colon + 1), entity.getIdType().getJavaType());
+            XPersist.evictCache(entity.getJavaType(), id);
+            evictions.getAndIncrement();
+            LOGGER.debug("Evicted {} from cache", payload);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot invalidate {}. Cause: {}", payload, e.toString(), e);
+        }
+    }
+
+    /**
+     * Publish a change to every process listening to the channel, including
+     * this one.
+     * <p>
+     * This runs in its own EntityManager, invoke it after the change is
+     * committed.
+     *
+     * @param entityClass Entity class
+     * @param id Primary key, null if every entity of the class changed
+     */
+    public void publish(Class<?> entityClass, Object id) {
+        final EntityManager em = XPersist.createManager();
+        try {
+            publish(em, entityClass, id);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Publish a change on the given EntityManager.
+     * <p>
+     * If the EntityManager has an active transaction, Postgres delivers the
+     * notification only when it is committed.
+     *
+     * @param em EntityManager to be used, this will not be closed
+     * @param entityClass Entity class
+     * @param id Primary key, null if every entity of the class changed
+     */
+    public void publish(EntityManager em, Class<?> entityClass, Object id) {
+        final String name = em.getMetamodel().entity(entityClass).getName();
+        em.createNativeQuery("SELECT pg_notify(?1, ?2)")
+                .setParameter(1, channel)
+                .setParameter(2, id == null ? name : name + ":" + id)
+                .getSingleResult();
+    }
+
+    private EntityType<?> entity(String name) {
+        EntityType<?> entity = entities.get(name);
+        if (entity == null) {
+            for (EntityType<?> type : XPersist.EMF.getMetamodel().getEntities()) {
+                if (type.getName().equals(name) || type.getJavaType().getName().equals(name)) {
+                    entity = type;
+                    entities.put(name, entity);
+                    break;
+                }
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Convert the id of a payload to the primary key type.
+     */
+    private static Object toId(String id, Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(id);
+        } else if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(id);
+        } else if (type == Short.class || type == short.class) {
+            return Short.valueOf(id);
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(id);
+        } else if (type == UUID.class) {
+            return UUID.fromString(id);
+        } else if (type == String.class) {
+            return id;
+        }
+        throw new IllegalArgumentException("CacheInvalidator -> [ERROR] Unsupported id type " + type.getName() + ".");
+    }
+
+    /**
+     * Number of evictions done from the notifications.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+}
@@ -0,0 +1,766 @@
+package my.jutils.db;
+
+import java.lang.reflect.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.Pattern;
+import my.jutils.services.BackgroundThreadFactory;
+import org.slf4j.*;
+
+/**
+ * Simple bounded JDBC connection pool.
+ * <p>
+ * Connections are created lazily up to {@code maxSize} and are handed out as
+ * a wrapped {@link Connection}, invoking {@code close()} on it returns the
+ * physical connection to the pool instead of closing the socket. Idle
+ * connections are validated before they are borrowed again, and those idle
+ * longer than {@code idleTimeout} are evicted by a background task.
+ * <br />
+ * A connection borrowed longer than {@code leakThreshold} is reported once as
+ * a possible leak, together with the stack trace of the borrower.
+ * <br />
+ * {@code prepareStatement(String)} is served from a {@link StatementCache} of
+ * the physical connection, so repeated statements reuse their server-side
+ * plan across borrows.
+ * <br />
+ * A returned connection gets back the read-only flag, transaction isolation,
+ * holdability, catalog and schema it was created with. A connection whose
+ * session was changed otherwise, thru a <i>SET</i>, <i>RESET</i> or
+ * <i>DISCARD</i> statement or {@code setClientInfo}, {@code setTypeMap} or
+ * {@code setNetworkTimeout}, is closed instead.
+ * <br /><br />
+ * Shared pools are created thru {@link ConnectionPool#getPool(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int)}
+ * and are keyed by (dbServer, serverIP, serverPort, dbName, username).
+ * <br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * try (Connection conn = SQLUtils.setConnection("postgresql", "localhost", "5432", "db", "user", "pass", true)) { <br />
+ * <blockquote>
+ * // Some query here <br />
+ * </blockquote>
+ * }
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class ConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class.getSimpleName());
+
+    /**
+     * Default maximum number of connections per pool.
+     */
+    public static final int DEFAULT_MAX_SIZE = 10;
+    /**
+     * Default idle time in millis before a connection is evicted.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 300000;
+    /**
+     * Default borrow time in millis before a connection is reported as leak.
+     */
+    public static final long DEFAULT_LEAK_THRESHOLD = 60000;
+    /**
+     * Default wait time in millis when the pool is exhausted.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT = 30000;
+    /**
+     * Default number of cached prepared statements per connection.
+     */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+
+    private static final ConcurrentMap<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Statements that change the session state of the connection, a
+     * <i>SET LOCAL</i> or <i>SET TRANSACTION</i> ends with the transaction.
+     */
+    private static final Pattern SESSION_SQL = Pattern.compile("(?i)^\\s*(SET(?!\\s+(LOCAL|TRANSACTION)\\b)|RESET|DISCARD)\\b");
+
+    private final String name;
+    private final String url;
+    private final Properties props;
+    private volatile int maxSize;
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long leakThreshold = DEFAULT_LEAK_THRESHOLD;
+    private volatile long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+    private volatile int validationTimeout = 2;
+    private volatile int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+    private final ResizableSemaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle;
+    private final Set<PooledConnection> borrowed;
+    private final ScheduledExecutorService housekeeper;
+    private final AtomicBoolean closed;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    /**
+     * Create new connection pool.
+     *
+     * @param name Pool name, used for logging and thread name
+     * @param url JDBC URL of the database
+     * @param props Connection properties, this includes the user and password
+     * @param maxSize Maximum number of physical connections
+     */
+    public ConnectionPool(String name, String url, Properties props, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("ConnectionPool -> [ERROR] maxSize must be greater than zero.");
+        }
+        this.name = name;
+        this.url = url;
+        this.props = props;
+        this.maxSize = maxSize;
+        this.permits = new ResizableSemaphore(maxSize);
+        this.idle = new LinkedBlockingDeque<>();
+        this.borrowed = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+        this.closed = new AtomicBoolean();
+        final ThreadFactory factory = new BackgroundThreadFactory(ConnectionPool.class.getSimpleName() + "-" + name);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = factory.newThread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+                detectLeaks();
+            }
+        }, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Semaphore whose permits may be reduced, for {@code setMaxSize()}.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * Get the shared pool of the given database and user, with
+     * {@code DEFAULT_MAX_SIZE} connections if it is created.
+     *
+     * @param dbServer Database server that you are using
+     * @param serverIP Database server host
+     * @param serverPort Database server port
+     * @param dbName Database name
+     * @param username User of the database
+     * @param password Nothing is special here
+     * @return Shared connection pool
+     * @throws SQLException If the JDBC driver cannot be loaded
+     * @see ConnectionPool#getPool(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int)
+     */
+    public static ConnectionPool getPool(String dbServer, String serverIP, String serverPort, String dbName, String username, String password) throws SQLException {
+        return getPool(dbServer, serverIP, serverPort, dbName, username, password, 0);
+    }
+
+    /**
+     * Get the shared pool of the given database and user.
+     * <p>
+     * The pool will be created with the default settings if it does not exists
+     * yet, otherwise it is resized to the given size. Note that the password
+     * is only used when the pool is created. Invoke this before
+     * {@code SQLUtils.setConnection} to size the pool it draws from.
+     *
+     * @param dbServer Database server that you are using
+     * @param serverIP Database server host
+     * @param serverPort Database server port
+     * @param dbName Database name
+     * @param username User of the database
+     * @param password Nothing is special here
+     * @param maxSize Maximum number of connections, zero (0) to keep the size
+     * of an existing pool or to use {@code DEFAULT_MAX_SIZE}
+     * @return Shared connection pool
+     * @throws SQLException If the JDBC driver cannot be loaded
+     */
+    public static ConnectionPool getPool(String dbServer, String serverIP, String serverPort, String dbName, String username, String password, int maxSize) throws SQLException {
+        final String key = dbServer + "://" + username + "@" + serverIP + ":" + serverPort + "/" + dbName;
+        ConnectionPool pool = POOLS.get(key);
+        if (pool == null || pool.isClosed()) {
+            SQLUtils.loadDriver(dbServer);
+            final Properties props = new Properties();
+            props.setProperty("user", username);
+            props.setProperty("password", password);
+            final ConnectionPool created = new ConnectionPool(key, SQLUtils.toURL(dbServer, serverIP, serverPort, dbName), props, maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE);
+            if (pool == null) {
+                pool = POOLS.putIfAbsent(key, created);
+            } else {
+                pool = POOLS.replace(key, pool, created) ? null : POOLS.get(key);
+            }
+            if (pool == null) {
+                pool = created;
+                LOGGER.info("Connection pool created for {}", key);
+            } else {
+                created.close();
+            }
+        }
+        if (maxSize > 0) {
+            pool.setMaxSize(maxSize);
+        }
+        return pool;
+    }
+
+    /**
+     * Close all shared pools.
+     */
+    public static void closeAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.close();
+        }
+        POOLS.clear();
+    }
+
+    /**
+     * Borrow a connection from the pool.
+     * <p>
+     * This will wait up to {@code borrowTimeout} if all connections are
+     * currently in use. The returned connection must be closed after using to
+     * return it to the pool.
+     *
+     * @return Pooled connection
+     * @throws SQLException If the pool is exhausted, closed, or a new connection
+     * cannot be created
+     */
+    public Connection borrow() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("ConnectionPool -> [ERROR] Pool " + name + " is already closed.", "08003");
+        }
+        final long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                timeouts.getAndIncrement();
+                throw new SQLException("ConnectionPool -> [ERROR] Timeout waiting for connection from " + name + ".", "08001");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("ConnectionPool -> [ERROR] Interrupted while waiting for connection.", "08001", e);
+        }
+        recordWait(System.nanoTime() - start);
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (validate(pc)) {
+                    break;
+                }
+                destroy(pc);
+            }
+            if (pc == null) {
+                final Connection raw = DriverManager.getConnection(url, props);
+                try {
+                    pc = new PooledConnection(raw);
+                } catch (SQLException | RuntimeException e) {
+                    raw.close();
+                    throw e;
+                }
+                created.getAndIncrement();
+                LOGGER.debug("New connection created for {}", name);
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrower = new Throwable("Connection borrowed by " + Thread.currentThread().getName());
+            pc.leakReported = false;
+            borrowed.add(pc);
+            return pc.handle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the pool and all idle connections.
+     * <p>
+     * Borrowed connections will be closed once they are returned.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            housekeeper.shutdownNow();
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                destroy(pc);
+            }
+            POOLS.remove(name, this);
+            LOGGER.info("Connection pool {} is now closed...", name);
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        if (!borrowed.remove(pc)) {
+            return;
+        }
+        try {
+            if (closed.get() || pc.raw.isClosed()) {
+                destroy(pc);
+            } else if (pc.sessionChanged) {
+                LOGGER.debug("Session of the connection was changed, discarding...");
+                destroy(pc);
+            } else if (idle.size() >= maxSize) {
+                // The pool was shrunk thru setMaxSize
+                destroy(pc);
+            } else {
+                if (!pc.raw.getAutoCommit()) {
+                    pc.raw.rollback();
+                    pc.raw.setAutoCommit(true);
+                }
+                if (pc.modified) {
+                    pc.restore();
+                }
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Cannot reset connection, discarding... Cause: {}", e.toString());
+            destroy(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean validate(PooledConnection pc) {
+        try {
+            return pc.raw.isValid(validationTimeout);
+        } catch (SQLException | AbstractMethodError e) {
+            LOGGER.debug("Connection validation failed: {}", e.toString());
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        if (pc.statements != null) {
+            pc.statements.close();
+        }
+        try {
+            pc.raw.close();
+        } catch (SQLException e) {
+            LOGGER.debug(e.getMessage(), e);
+        }
+        destroyed.getAndIncrement();
+    }
+
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        final Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            final PooledConnection pc = it.next();
+            if (now - pc.lastUsed >= idleTimeout && idle.remove(pc)) {
+                LOGGER.debug("Evicting idle connection from {}", name);
+                destroy(pc);
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        final long now = System.currentTimeMillis();
+        for (PooledConnection pc : borrowed) {
+            if (!pc.leakReported && now - pc.borrowedAt >= leakThreshold) {
+                pc.leakReported = true;
+                leaks.getAndIncrement();
+                LOGGER.warn("Possible connection leak from {}, borrowed {} ms ago.", name, now - pc.borrowedAt, pc.borrower);
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        borrows.getAndIncrement();
+        waitNanos.getAndAdd(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Physical connection held by the pool.
+     */
+    private class PooledConnection {
+
+        private final Connection raw;
+        private final boolean readOnly;
+        private final int isolation;
+        private final int holdability;
+        private final String catalog;
+        private final String schema;
+        private volatile long lastUsed;
+        private volatile long borrowedAt;
+        private volatile Throwable borrower;
+        private volatile boolean leakReported;
+        private volatile boolean modified;
+        private volatile boolean sessionChanged;
+        private StatementCache statements;
+
+        PooledConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.lastUsed = System.currentTimeMillis();
+            this.readOnly = raw.isReadOnly();
+            this.isolation = raw.getTransactionIsolation();
+            this.holdability = raw.getHoldability();
+            this.catalog = raw.getCatalog();
+            String current = null;
+            try {
+                current = raw.getSchema();
+            } catch (SQLException | AbstractMethodError e) {
+                LOGGER.debug("Schema is not supported by the driver: {}", e.toString());
+            }
+            this.schema = current;
+        }
+
+        /**
+         * Restore the settings the connection was created with.
+         */
+        void restore() throws SQLException {
+            if (raw.isReadOnly() != readOnly) {
+                raw.setReadOnly(readOnly);
+            }
+            if (raw.getTransactionIsolation() != isolation) {
+                raw.setTransactionIsolation(isolation);
+            }
+            if (raw.getHoldability() != holdability) {
+                raw.setHoldability(holdability);
+            }
+            if (catalog != null && !catalog.equals(raw.getCatalog())) {
+                raw.setCatalog(catalog);
+            }
+            if (schema != null && !schema.equals(raw.getSchema())) {
+                raw.setSchema(schema);
+            }
+            modified = false;
+        }
+
+        /**
+         * Mark the session as changed if the SQL is a session statement.
+         */
+        void inspect(Object sql) {
+            if (sql instanceof String && SESSION_SQL.matcher((String) sql).find()) {
+                sessionChanged = true;
+            }
+        }
+
+        /**
+         * Statement of the handle, which inspects the executed SQL.
+         */
+        Statement statement(final Statement stmt, final Connection handle) {
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return handle;
+                        case "execute":
+                        case "executeQuery":
+                        case "executeUpdate":
+                        case "executeLargeUpdate":
+                        case "addBatch":
+                            inspect(args[0]);
+                            break;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                    }
+                    try {
+                        return method.invoke(stmt, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Create the connection handed out to the borrower. Each borrow gets its
+         * own handle, so a handle that was already closed cannot touch the
+         * physical connection anymore.
+         */
+        Connection handle() {
+            final AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (released.compareAndSet(false, true)) {
+                                release(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return released.get() || raw.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Pooled[" + name + "] " + raw;
+                    }
+                    if (released.get()) {
+                        throw new SQLException("ConnectionPool -> [ERROR] Connection has been already closed.", "08003");
+                    }
+                    switch (method.getName()) {
+                        case "setReadOnly":
+                        case "setTransactionIsolation":
+                        case "setHoldability":
+                        case "setCatalog":
+                        case "setSchema":
+                            modified = true;
+                            break;
+                        case "setClientInfo":
+                        case "setTypeMap":
+                        case "setNetworkTimeout":
+                            sessionChanged = true;
+                            break;
+                        case "prepareStatement":
+                        case "prepareCall":
+                            inspect(args[0]);
+                            break;
+                        case "createStatement":
+                            try {
+                                return statement((Statement) method.invoke(raw, args), (Connection) proxy);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                    if (method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0) {
+                        if (statements == null) {
+                            statements = new StatementCache(raw, statementCacheSize);
+                        }
+                        return statements.prepare((String) args[0], (Connection) proxy);
+                    }
+                    try {
+                        return method.invoke(raw, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Set the idle time before a connection is evicted.
+     *
+     * @param idleTimeout Idle timeout in millis
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set the borrow time before a connection is reported as leak.
+     *
+     * @param leakThreshold Leak threshold in millis
+     */
+    public void setLeakThreshold(long leakThreshold) {
+        this.leakThreshold = leakThreshold;
+    }
+
+    /**
+     * Set the wait time when the pool is exhausted.
+     *
+     * @param borrowTimeout Borrow timeout in millis
+     */
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * Set the timeout used by {@link Connection#isValid(int)} on borrow.
+     *
+     * @param validationTimeout Validation timeout in seconds
+     */
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    /**
+     * Set the number of cached prepared statements per connection.
+     * <p>
+     * This only applies to connections that have not prepared a statement
+     * yet, zero (0) disables the cache.
+     *
+     * @param statementCacheSize Statements per connection
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Set the maximum number of physical connections.
+     * <p>
+     * When the pool is shrunk, borrowed connections above the new size are
+     * closed once they are returned.
+     *
+     * @param maxSize Max size
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("ConnectionPool -> [ERROR] maxSize must be greater than zero.");
+        }
+        final int delta = maxSize - this.maxSize;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+            PooledConnection pc;
+            while (idle.size() > maxSize && (pc = idle.pollLast()) != null) {
+                destroy(pc);
+            }
+        }
+        this.maxSize = maxSize;
+        if (delta != 0) {
+            LOGGER.info("Connection pool {} resized to {}", name, maxSize);
+        }
+    }
+
+    /**
+     * Name of this pool.
+     *
+     * @return Pool name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Maximum number of physical connections.
+     *
+     * @return Max size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Check whether this pool is already closed.
+     *
+     * @return True if closed, otherwise false
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Number of connections currently borrowed.
+     *
+     * @return Active connections
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Number of connections currently waiting in the pool.
+     *
+     * @return Idle connections
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Number of threads currently waiting for a connection.
+     *
+     * @return Waiting threads
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Total number of successful borrows.
+     *
+     * @return Borrow count
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * Average time spent waiting for a connection.
+     *
+     * @return Average wait in millis
+     */
+    public double getAverageWaitMillis() {
+        final long count = borrows.get();
+        return count == 0 ? 0 : waitNanos.get() / (count * 1000000d);
+    }
+
+    /**
+     * Longest time spent waiting for a connection.
+     *
+     * @return Max wait in millis
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000d;
+    }
+
+    /**
+     * Number of borrows that timed out.
+     *
+     * @return Timeout count
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Number of physical connections created.
+     *
+     * @return Created count
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Number of physical connections closed, due to eviction or failed
+     * validation.
+     *
+     * @return Destroyed count
+     */
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    /**
+     * Number of connections reported as possible leak.
+     *
+     * @return Leak count
+     */
+    public long getLeakCount() {
+        return leaks.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[name=" + name + ", active=" + getActiveCount() + ", idle=" + getIdleCount()
+                + ", waiting=" + getWaitingCount() + ", borrows=" + getBorrowCount()
+                + ", avgWait=" + getAverageWaitMillis() + "ms, maxWait=" + getMaxWaitMillis() + "ms"
+                + ", timeouts=" + getTimeoutCount() + ", leaks=" + getLeakCount() + "]";
+    }
+
+}
@@ -0,0 +1,472 @@
+package my.jutils.db;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.persistence.EntityManager;
+import my.jutils.services.BackgroundThreadFactory;
+import org.slf4j.*;
+
+/**
+ * Background database health probe.
+ * <p>
+ * Unlike {@link XPersist#test()}, this never shows a dialog nor exits the JVM,
+ * and does not block the caller. A probe runs every {@code interval} on a
+ * background thread and is given up after {@code timeout}. The outcome is
+ * exposed as a {@link State}:
+ * <br />
+ * <i>Up</i> when the last probe succeeded within {@code degradedLatency},
+ * <i>Degraded</i> when it was slower or some probes failed, and <i>Down</i>
+ * after {@code failureThreshold} consecutive failures. It stays
+ * <i>Unknown</i> until the first probe completes.
+ * <br />
+ * Listeners are notified on every state change, and the latency of the
+ * successful probes is recorded in a histogram.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final HealthMonitor monitor = XPersist.openAsync("MyPU", "localhost", null); <br />
+ * monitor.addListener(listener); <br />
+ * // Carry on with the startup, or wait for a while <br />
+ * monitor.await(5000);
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class HealthMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HealthMonitor.class.getSimpleName());
+
+    /**
+     * Upper bounds in millis of the latency histogram buckets, the last bucket
+     * holds everything slower.
+     */
+    private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final String name;
+    private final Probe probe;
+    private final List<Listener> listeners;
+    private final AtomicLongArray histogram;
+    private final AtomicLong probes;
+    private final AtomicLong failures;
+    private final Object lock = new Object();
+
+    private volatile long interval = 5000;
+    private volatile long timeout = 3000;
+    private volatile long degradedLatency = 500;
+    private volatile int failureThreshold = 3;
+
+    private volatile State state = State.Unknown;
+    private volatile double lastLatencyMillis;
+    private volatile Throwable lastError;
+    private int consecutiveFailures;
+    private Future<?> inflight;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService prober;
+
+    /**
+     * Health state of the database.
+     */
+    public static enum State {
+
+        /**
+         * No probe has completed yet.
+         */
+        Unknown,
+        /**
+         * Last probe succeeded and was fast enough.
+         */
+        Up,
+        /**
+         * Last probe was slow, or failed less than {@code failureThreshold}
+         * times in a row.
+         */
+        Degraded,
+        /**
+         * Probes failed {@code failureThreshold} times in a row.
+         */
+        Down
+    }
+
+    /**
+     * Checks the database once.
+     */
+    public static interface Probe {
+
+        /**
+         * Do a round trip to the database.
+         *
+         * @throws Exception If the database cannot be reached
+         */
+        public void probe() throws Exception;
+
+    }
+
+    /**
+     * Receives the state changes.
+     */
+    public static interface Listener {
+
+        /**
+         * Invoked on the monitor's thread when the state changes.
+         *
+         * @param previous Previous state
+         * @param current New state
+         */
+        public void stateChanged(State previous, State current);
+
+    }
+
+    /**
+     * Create new monitor.
+     *
+     * @param name Name used for logging and thread name
+     * @param probe Check to be run periodically
+     */
+    public HealthMonitor(String name, Probe probe) {
+        this.name = name;
+        this.probe = probe;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.histogram = new AtomicLongArray(BUCKETS.length + 1);
+        this.probes = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Monitor for the EntityManagerFactory of {@link XPersist}.
+     *
+     * @return New monitor, not started yet
+     */
+    public static HealthMonitor forXPersist() {
+        return new HealthMonitor(XPersist.class.getSimpleName(), new Probe() {
+            @Override
+            public void probe() {
+                ping(XPersist.createManager());
+            }
+        });
+    }
+
+    /**
+     * Monitor for the given unit.
+     *
+     * @param unit Unit to be checked
+     * @return New monitor, not started yet
+     */
+    public static HealthMonitor forUnit(final XPersistUnit unit) {
+        return new HealthMonitor(unit.getStats().getPersistenceUnit() + "@" + unit.getStats().getServer(), new Probe() {
+            @Override
+            public void probe() {
+                ping(unit.createManager());
+            }
+        });
+    }
+
+    private static void ping(EntityManager em) {
+        try {
+            em.createNativeQuery("SELECT 1").getSingleResult();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Start probing, this returns immediately.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        final ThreadFactory factory = new BackgroundThreadFactory(HealthMonitor.class.getSimpleName() + "-" + name);
+        final ThreadFactory daemon = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = factory.newThread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemon);
+        prober = Executors.newCachedThreadPool(daemon);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+        LOGGER.info("Health monitor started for {}", name);
+    }
+
+    /**
+     * Stop probing.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            prober.shutdownNow();
+            scheduler = null;
+            prober = null;
+            LOGGER.info("Health monitor stopped for {}", name);
+        }
+    }
+
+    /**
+     * Run one probe, giving it up after {@code timeout}.
+     */
+    private void tick() {
+        if (inflight != null && !inflight.isDone()) {
+            // The previous probe is still stuck on the driver
+            failed(new TimeoutException("Previous probe has not returned yet."));
+            return;
+        }
+        final long start = System.nanoTime();
+        final ExecutorService executor = prober;
+        if (executor == null) {
+            return;
+        }
+        inflight = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                probe.probe();
+                return null;
+            }
+        });
+        try {
+            inflight.get(timeout, TimeUnit.MILLISECONDS);
+            succeeded((System.nanoTime() - start) / 1000000d);
+        } catch (ExecutionException e) {
+            failed(e.getCause());
+        } catch (TimeoutException e) {
+            failed(new TimeoutException("Probe took longer than " + timeout + " ms."));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void succeeded(double millis) {
+        probes.getAndIncrement();
+        lastLatencyMillis = millis;
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.getAndIncrement(bucket);
+        consecutiveFailures = 0;
+        transition(millis > degradedLatency ? State.Degraded : State.Up, String.format("%.1f ms", millis));
+    }
+
+    private void failed(Throwable error) {
+        probes.getAndIncrement();
+        failures.getAndIncrement();
+        lastError = error;
+        consecutiveFailures++;
+        LOGGER.debug("Probe of {} failed ({} in a row). Cause: {}", name, consecutiveFailures, String.valueOf(error));
+        transition(consecutiveFailures >= failureThreshold ? State.Down : State.Degraded, String.valueOf(error));
+    }
+
+    private void transition(State current, String detail) {
+        final State previous = state;
+        if (previous == current) {
+            return;
+        }
+        synchronized (lock) {
+            state = current;
+            lock.notifyAll();
+        }
+        if (current == State.Down) {
+            LOGGER.error("{} is DOWN. Cause: {}", name, detail);
+        } else {
+            LOGGER.info("{} is now {} ({})", name, current, detail);
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(previous, current);
+            } catch (RuntimeException e) {
+                LOGGER.error("Cause: {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Wait until the first probe completes.
+     *
+     * @param timeoutMillis Maximum wait in millis
+     * @return Current state, still <i>Unknown</i> if the wait timed out
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public State await(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            long remaining;
+            while (state == State.Unknown && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                lock.wait(remaining);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Register a listener of the state changes.
+     *
+     * @param listener Listener to be notified
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener of the state changes.
+     *
+     * @param listener Listener to be removed
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Current health state.
+     *
+     * @return State
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Check whether the database can be used, either <i>Up</i> or
+     * <i>Degraded</i>.
+     *
+     * @return True if available, otherwise false
+     */
+    public boolean isAvailable() {
+        return state == State.Up || state == State.Degraded;
+    }
+
+    /**
+     * Latency of the last successful probe.
+     *
+     * @return Latency in millis
+     */
+    public double getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * Cause of the last failed probe.
+     *
+     * @return Exception, null if no probe failed yet
+     */
+    public Throwable getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Number of probes run.
+     *
+     * @return Probe count
+     */
+    public long getProbeCount() {
+        return probes.get();
+    }
+
+    /**
+     * Number of probes failed or timed out.
+     *
+     * @return Failure count
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Latency histogram of the successful probes.
+     * <p>
+     * Keys are the upper bound of each bucket in millis, in ascending order,
+     * and {@code Long.MAX_VALUE} for the last one.
+     *
+     * @return Count per bucket
+     */
+    public Map<Long, Long> getLatencyHistogram() {
+        final Map<Long, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < histogram.length(); i++) {
+            map.put(i < BUCKETS.length ? BUCKETS[i] : Long.MAX_VALUE, histogram.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * Estimate a latency percentile from the histogram.
+     *
+     * @param percentile Percentile between 0 and 100, eg. 99
+     * @return Upper bound in millis of the bucket holding the percentile,
+     * {@code Long.MAX_VALUE} if it is slower than the last bound, zero if no
+     * probe succeeded yet
+     */
+    public long getLatencyPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            total += histogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final double rank = Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= rank) {
+                return i < BUCKETS.length ? BUCKETS[i] : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Set the time between probes, this must be invoked before
+     * {@code start()}.
+     *
+     * @param interval Interval in millis
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Set the time a probe is given before it counts as failed.
+     *
+     * @param timeout Timeout in millis
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Set the latency above which the database is <i>Degraded</i>.
+     *
+     * @param degradedLatency Latency in millis
+     */
+    public void setDegradedLatency(long degradedLatency) {
+        this.degradedLatency = degradedLatency;
+    }
+
+    /**
+     * Set the number of consecutive failures before the database is
+     * <i>Down</i>.
+     *
+     * @param failureThreshold Consecutive failures
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("HealthMonitor -> [ERROR] failureThreshold must be greater than zero.");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "HealthMonitor[name=" + name + ", state=" + state + ", latency=" + lastLatencyMillis
+                + "ms, p99=" + getLatencyPercentile(99) + "ms, probes=" + probes + ", failures=" + failures + "]";
+    }
+
+}
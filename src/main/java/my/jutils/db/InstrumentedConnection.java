@@ -0,0 +1,174 @@
+package my.jutils.db;
+
+import java.lang.reflect.*;
+import java.sql.*;
+
+/**
+ * Connection wrapper that records every statement to {@link QueryMetrics}.
+ * <p>
+ * Statements created from the wrapped connection time their
+ * {@code execute}, {@code executeQuery}, {@code executeUpdate} and
+ * {@code executeBatch}. Updated rows are recorded with the execution, and
+ * rows read from a ResultSet are added when the ResultSet is closed.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * try (Connection conn = InstrumentedConnection.wrap(rawConnection)) { <br />
+ * <blockquote>
+ * // Some query here <br />
+ * </blockquote>
+ * }
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class InstrumentedConnection {
+
+    /**
+     * This has nothing to do since it only has static methods.
+     */
+    private InstrumentedConnection() {
+    }
+
+    /**
+     * Wrap a connection.
+     *
+     * @param conn Connection to be wrapped, closing the wrapper closes it
+     * @return Instrumented connection
+     */
+    public static Connection wrap(final Connection conn) {
+        if (conn == null || Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof ConnectionHandler) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new ConnectionHandler(conn));
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection conn;
+
+        ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + conn + "]";
+            }
+            final Object result = call(conn, method, args);
+            if (result instanceof Statement) {
+                final String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                return wrap((Statement) result, (Connection) proxy, sql);
+            }
+            return result;
+        }
+    }
+
+    private static Object wrap(final Statement stmt, final Connection owner, final String prepared) {
+        final Class<?> type = stmt instanceof CallableStatement ? CallableStatement.class
+                : stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            private String lastSql = prepared;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                switch (name) {
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "addBatch":
+                        if (args != null && args.length == 1) {
+                            lastSql = (String) args[0];
+                        }
+                        return call(stmt, method, args);
+                }
+                if (!name.startsWith("execute")) {
+                    final Object result = call(stmt, method, args);
+                    if (result instanceof ResultSet && lastSql != null) {
+                        return wrap((ResultSet) result, lastSql);
+                    }
+                    return result;
+                }
+                final String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : lastSql;
+                lastSql = sql;
+                final long start = System.nanoTime();
+                try {
+                    final Object result = call(stmt, method, args);
+                    final long nanos = System.nanoTime() - start;
+                    QueryMetrics.get().record(sql, nanos, rows(result), null);
+                    if (result instanceof ResultSet) {
+                        return wrap((ResultSet) result, sql);
+                    }
+                    return result;
+                } catch (Throwable e) {
+                    QueryMetrics.get().record(sql, System.nanoTime() - start, -1, e);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        } else if (result instanceof int[]) {
+            long sum = 0;
+            for (int n : (int[]) result) {
+                sum += n > 0 ? n : 0;
+            }
+            return sum;
+        }
+        return -1;
+    }
+
+    private static ResultSet wrap(final ResultSet rs, final String sql) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            private long rows;
+            private boolean recorded;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "next":
+                        final Object next = call(rs, method, args);
+                        if (Boolean.TRUE.equals(next)) {
+                            rows++;
+                        }
+                        return next;
+                    case "close":
+                        if (!recorded) {
+                            recorded = true;
+                            QueryMetrics.get().recordRows(sql, rows);
+                        }
+                        return call(rs, method, args);
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                }
+                return call(rs, method, args);
+            }
+        });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,458 @@
+package my.jutils.db;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import javax.persistence.*;
+import org.slf4j.*;
+
+/**
+ * Keyset (seek method) paginator for large table scans.
+ * <p>
+ * Instead of <b>OFFSET</b>, which makes the database read and discard every
+ * row before the page, the next page starts right after the keys of the last
+ * row of the previous page:
+ * <br />
+ * <i>SELECT * FROM foo WHERE (k1, k2) &gt; (?, ?) ORDER BY k1, k2 LIMIT ?</i>
+ * <br />
+ * So every page costs the same thru an index on the key columns, no matter
+ * how deep it is. The keys of the last row are returned with each
+ * {@link Page} as an opaque continuation token, pass it to the next
+ * {@code fetch} to get the next page.
+ * <br />
+ * The key columns must be unique together, otherwise rows sharing the keys
+ * at a page boundary would be skipped.
+ * <br /><br />
+ * Note: <i>Thru {@link XPersist}, the key columns are the entity's attribute
+ * names and the row comparison is expanded to
+ * <b>k1 &gt; ?1 OR (k1 = ?1 AND k2 &gt; ?2)</b>, since JPQL has no row
+ * values.</i> <br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final KeysetPaginator paginator = new KeysetPaginator(Arrays.asList("created", "id"), 100); <br />
+ * KeysetPaginator.Page&lt;Object[]&gt; page = paginator.fetch(conn, "product", null); <br />
+ * while (page.hasNext()) { <br />
+ * <blockquote>
+ * page = paginator.fetch(conn, "product", page.getNextToken()); <br />
+ * </blockquote>
+ * }
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class KeysetPaginator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeysetPaginator.class.getSimpleName());
+
+    private final List<String> keyColumns;
+    private final int pageSize;
+
+    private String columns = "*";
+    private boolean descending;
+
+    /**
+     * Create new paginator.
+     *
+     * @param keyColumns Ordered key columns, unique together
+     * @param pageSize Rows per page
+     */
+    public KeysetPaginator(List<String> keyColumns, int pageSize) {
+        if (keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("KeysetPaginator -> [ERROR] keyColumns must not be empty.");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("KeysetPaginator -> [ERROR] pageSize must be greater than zero.");
+        }
+        this.keyColumns = Collections.unmodifiableList(new ArrayList<>(keyColumns));
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Convert the current row of a ResultSet.
+     *
+     * @param <T> Type of the item
+     */
+    public static interface RowMapper<T> {
+
+        /**
+         * Map the current row, do not move the cursor.
+         *
+         * @param rs ResultSet positioned on the row
+         * @return Item of the row
+         * @throws SQLException If a column cannot be read
+         */
+        public T map(ResultSet rs) throws SQLException;
+
+    }
+
+    /**
+     * Page of rows with the token of the next page.
+     *
+     * @param <T> Type of the items
+     */
+    public static class Page<T> {
+
+        private final List<T> items;
+        private final String nextToken;
+
+        private Page(List<T> items, String nextToken) {
+            this.items = Collections.unmodifiableList(items);
+            this.nextToken = nextToken;
+        }
+
+        /**
+         * Rows of this page.
+         *
+         * @return Items, at most {@code pageSize}
+         */
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * Token of the next page.
+         *
+         * @return Token, null if this is the last page
+         */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        /**
+         * Check whether there is a next page.
+         *
+         * @return True if there are more rows, otherwise false
+         */
+        public boolean hasNext() {
+            return nextToken != null;
+        }
+    }
+
+    /**
+     * Generate SQL statement of a page.
+     * <p>
+     * The parameters are the key values of the last row, if {@code first} is
+     * false, followed by the limit.
+     *
+     * @param table_name Your table/entity name
+     * @param first True for the first page, which has no key condition
+     * @return Generated SQL <b>SELECT</b> statement
+     */
+    public String query(String table_name, boolean first) {
+        final StringBuilder query = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table_name);
+        if (!first) {
+            final StringBuilder marks = new StringBuilder();
+            for (int i = 0; i < keyColumns.size(); i++) {
+                marks.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(" WHERE (").append(join(keyColumns, "", ", ")).append(")")
+                    .append(descending ? " < (" : " > (").append(marks).append(")");
+        }
+        query.append(" ORDER BY ").append(join(keyColumns, "", descending ? " DESC, " : ", "));
+        if (descending) {
+            query.append(" DESC");
+        }
+        return query.append(" LIMIT ?").toString();
+    }
+
+    private static String join(List<String> values, String prefix, String separator) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            sb.append(i == 0 ? "" : separator).append(prefix).append(values.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Fetch a page thru plain JDBC, with each row as an array of its columns.
+     *
+     * @param conn Connection to be used, this will not be closed
+     * @param table_name Your table/entity name
+     * @param token Token of the previous page, null for the first page
+     * @return Page of rows
+     * @throws SQLException If the query failed
+     */
+    public Page<Object[]> fetch(Connection conn, String table_name, String token) throws SQLException {
+        return fetch(conn, table_name, token, new RowMapper<Object[]>() {
+            @Override
+            public Object[] map(ResultSet rs) throws SQLException {
+                final Object[] row = new Object[rs.getMetaData().getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                return row;
+            }
+        });
+    }
+
+    /**
+     * Fetch a page thru plain JDBC.
+     * <p>
+     * The selected columns must include the key columns.
+     *
+     * @param <T> Type of the items
+     * @param conn Connection to be used, this will not be closed
+     * @param table_name Your table/entity name
+     * @param token Token of the previous page, null for the first page
+     * @param mapper Converts each row
+     * @return Page of rows
+     * @throws SQLException If the query failed
+     */
+    public <T> Page<T> fetch(Connection conn, String table_name, String token, RowMapper<? extends T> mapper) throws SQLException {
+        final Object[] after = token == null ? null : decode(token);
+        final List<T> items = new ArrayList<>(pageSize);
+        Object[] last = null;
+        boolean more = false;
+        try (PreparedStatement stmt = conn.prepareStatement(query(table_name, after == null))) {
+            int index = 1;
+            if (after != null) {
+                for (Object value : after) {
+                    stmt.setObject(index++, value);
+                }
+            }
+            // One more row tells whether there is a next page
+            stmt.setInt(index, pageSize + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (items.size() == pageSize) {
+                        more = true;
+                        break;
+                    }
+                    items.add(mapper.map(rs));
+                    last = new Object[keyColumns.size()];
+                    for (int i = 0; i < last.length; i++) {
+                        last[i] = rs.getObject(keyColumns.get(i));
+                    }
+                }
+            }
+        }
+        LOGGER.debug("Fetched {} rows from {}", items.size(), table_name);
+        return new Page<>(items, more ? encode(last) : null);
+    }
+
+    /**
+     * Fetch a page of entities thru the EntityManagerFactory of
+     * {@link XPersist}.
+     *
+     * @param <T> Type of the entity
+     * @param entityClass Entity class, the key columns are its attribute names
+     * @param token Token of the previous page, null for the first page
+     * @return Page of entities
+     */
+    public <T> Page<T> fetch(Class<T> entityClass, String token) {
+        final EntityManager em = XPersist.createManager();
+        try {
+            return fetch(em, entityClass, token);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Fetch a page of entities on the given EntityManager.
+     *
+     * @param <T> Type of the entity
+     * @param em EntityManager to be used, this will not be closed
+     * @param entityClass Entity class, the key columns are its attribute names
+     * @param token Token of the previous page, null for the first page
+     * @return Page of entities
+     */
+    public <T> Page<T> fetch(EntityManager em, Class<T> entityClass, String token) {
+        final Object[] after = token == null ? null : decode(token);
+        final String entity = em.getMetamodel().entity(entityClass).getName();
+        final StringBuilder jpql = new StringBuilder("SELECT e, ").append(join(keyColumns, "e.", ", "))
+                .append(" FROM ").append(entity).append(" e");
+        if (after != null) {
+            final String op = descending ? " < " : " > ";
+            jpql.append(" WHERE ");
+            for (int i = 0; i < keyColumns.size(); i++) {
+                jpql.append(i == 0 ? "(" : " OR (");
+                for (int j = 0; j < i; j++) {
+                    jpql.append("e.").append(keyColumns.get(j)).append(" = ?").append(j + 1).append(" AND ");
+                }
+                jpql.append("e.").append(keyColumns.get(i)).append(op).append("?").append(i + 1).append(")");
+            }
+        }
+        jpql.append(" ORDER BY ").append(join(keyColumns, "e.", descending ? " DESC, " : ", "));
+        if (descending) {
+            jpql.append(" DESC");
+        }
+        final Query query = em.createQuery(jpql.toString()).setMaxResults(pageSize + 1);
+        if (after != null) {
+            for (int i = 0; i < after.length; i++) {
+                query.setParameter(i + 1, after[i]);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = query.getResultList();
+        final List<T> items = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (int i = 0; i < rows.size() && i < pageSize; i++) {
+            items.add(entityClass.cast(rows.get(i)[0]));
+        }
+        String next = null;
+        if (rows.size() > pageSize) {
+            final Object[] row = rows.get(pageSize - 1);
+            next = encode(Arrays.copyOfRange(row, 1, row.length));
+        }
+        return new Page<>(items, next);
+    }
+
+    /**
+     * Encode key values as a token.
+     * <p>
+     * Each value is written as a type tag, its length and its text, so the
+     * token can be decoded without Java serialization. The result is in hex
+     * so it is safe in a URL.
+     */
+    private static String encode(Object[] keys) {
+        final StringBuilder sb = new StringBuilder();
+        for (Object key : keys) {
+            final String text;
+            final char tag;
+            if (key == null) {
+                tag = 'n';
+                text = "";
+            } else if (key instanceof Integer || key instanceof Short) {
+                tag = 'i';
+                text = key.toString();
+            } else if (key instanceof Long) {
+                tag = 'l';
+                text = key.toString();
+            } else if (key instanceof BigDecimal) {
+                tag = 'd';
+                text = ((BigDecimal) key).toString();
+            } else if (key instanceof Double || key instanceof Float) {
+                tag = 'f';
+                text = key.toString();
+            } else if (key instanceof Boolean) {
+                tag = 'b';
+                text = key.toString();
+            } else if (key instanceof Timestamp) {
+                tag = 't';
+                text = ((Timestamp) key).getTime() + "." + ((Timestamp) key).getNanos();
+            } else if (key instanceof java.sql.Date) {
+                tag = 'D';
+                text = key.toString();
+            } else if (key instanceof java.util.Date) {
+                tag = 'T';
+                text = String.valueOf(((java.util.Date) key).getTime());
+            } else if (key instanceof String) {
+                tag = 's';
+                text = (String) key;
+            } else if (key instanceof UUID) {
+                tag = 'u';
+                text = key.toString();
+            } else {
+                throw new IllegalArgumentException("KeysetPaginator -> [ERROR] Unsupported key type " + key.getClass().getName() + ".");
+            }
+            sb.append(tag).append(text.length()).append(':').append(text);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : sb.toString().getBytes(StandardCharsets.UTF_8)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private Object[] decode(String token) {
+        if (token.length() % 2 != 0) {
+            throw new IllegalArgumentException("KeysetPaginator -> [ERROR] Invalid token.");
+        }
+        final byte[] bytes = new byte[token.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(token.charAt(i * 2), 16);
+            final int low = Character.digit(token.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("KeysetPaginator -> [ERROR] Invalid token.");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        final String text = new String(bytes, StandardCharsets.UTF_8);
+        final Object[] keys = new Object[keyColumns.size()];
+        int pos = 0;
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                final char tag = text.charAt(pos);
+                final int colon = text.indexOf(':', pos);
+                final int length = Integer.parseInt(text.substring(pos + 1, colon));
+                final String value = text.substring(colon + 1, colon + 1 + length);
+                pos = colon + 1 + length;
+                keys[i] = parse(tag, value);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("KeysetPaginator -> [ERROR] Invalid token.", e);
+        }
+        if (pos != text.length()) {
+            throw new IllegalArgumentException("KeysetPaginator -> [ERROR] Invalid token.");
+        }
+        return keys;
+    }
+
+    private static Object parse(char tag, String value) {
+        switch (tag) {
+            case 'n':
+                return null;
+            case 'i':
+                return Integer.valueOf(value);
+            case 'l':
+                return Long.valueOf(value);
+            case 'd':
+                return new BigDecimal(value);
+            case 'f':
+                return Double.valueOf(value);
+            case 'b':
+                return Boolean.valueOf(value);
+            case 't':
+                final int dot = value.indexOf('.');
+                final Timestamp ts = new Timestamp(Long.parseLong(value.substring(0, dot)));
+                ts.setNanos(Integer.parseInt(value.substring(dot + 1)));
+                return ts;
+            case 'D':
+                return java.sql.Date.valueOf(value);
+            case 'T':
+                return new java.util.Date(Long.parseLong(value));
+            case 's':
+                return value;
+            case 'u':
+                return UUID.fromString(value);
+            default:
+                throw new IllegalArgumentException("Unknown tag " + tag);
+        }
+    }
+
+    /**
+     * Set the selected columns of the JDBC queries.
+     *
+     * @param columns Columns to be selected, these must include the key
+     * columns
+     * @return This paginator
+     */
+    public KeysetPaginator setColumns(List<String> columns) {
+        this.columns = join(columns, "", ", ");
+        return this;
+    }
+
+    /**
+     * Set the direction of the pages.
+     *
+     * @param descending True to page from the highest keys
+     * @return This paginator
+     */
+    public KeysetPaginator setDescending(boolean descending) {
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * Rows per page.
+     *
+     * @return Page size
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+}
@@ -0,0 +1,351 @@
+package my.jutils.db;
+
+import java.lang.reflect.Method;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import my.jutils.services.BackgroundThreadFactory;
+import org.postgresql.*;
+import org.slf4j.*;
+
+/**
+ * Push-based dispatcher for Postgres <b>LISTEN/NOTIFY</b>.
+ * <p>
+ * Unlike the polling methods of {@link XPgHelper}, this owns a dedicated
+ * connection and a listener thread. Notifications are dispatched to the
+ * listeners registered for their channel on an executor, so callers no
+ * longer have to poll.
+ * <br />
+ * If the connection is lost, the listener thread reconnects with backoff and
+ * issues <b>LISTEN</b> again for every subscribed channel.
+ * <br /><br />
+ * Note: <i>With a driver that supports {@code getNotifications(int)}
+ * (pgjdbc 42.x), the listener thread blocks on the socket until a
+ * notification arrives. Otherwise it checks the driver's receive buffer every
+ * {@code pollInterval}, which does not cost a round trip to the server.</i>
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final PgNotificationDispatcher dispatcher = new PgNotificationDispatcher("localhost", "5432", "db", "user", "pass"); <br />
+ * dispatcher.subscribe("product_changed", listener); <br />
+ * dispatcher.start();
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class PgNotificationDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PgNotificationDispatcher.class.getSimpleName());
+
+    private static final long MAX_RECONNECT_DELAY = 30000;
+
+    private final String url;
+    private final Properties props;
+    private final ConcurrentMap<String, List<Listener>> listeners;
+    private final Queue<String> pending;
+    private volatile ExecutorService executor;
+    private final boolean ownExecutor;
+    private final AtomicBoolean running;
+    private final AtomicLong dispatched;
+    private final AtomicLong reconnects;
+
+    private volatile long pollInterval = 100;
+    private volatile long keepAliveInterval = 10000;
+    private volatile Thread thread;
+
+    /**
+     * Receives the notifications of a channel.
+     */
+    public static interface Listener {
+
+        /**
+         * Invoked on the dispatcher's executor for each notification.
+         *
+         * @param notification Notification, including the payload from
+         * {@code getParameter()}
+         */
+        public void notified(PGNotification notification);
+
+    }
+
+    /**
+     * Create new dispatcher for the given Postgres database.
+     *
+     * @param serverIP Database server host
+     * @param serverPort Database server port
+     * @param dbName Database name
+     * @param username User of the database
+     * @param password Nothing is special here
+     */
+    public PgNotificationDispatcher(String serverIP, String serverPort, String dbName, String username, String password) {
+        this(SQLUtils.toURL("postgresql", serverIP, serverPort, dbName), credentials(username, password), null);
+    }
+
+    /**
+     * Create new dispatcher.
+     *
+     * @param url JDBC URL of the Postgres database
+     * @param props Connection properties, this includes the user and password
+     * @param executor Executor for the listeners, null to use a cached pool
+     * owned by this dispatcher
+     */
+    public PgNotificationDispatcher(String url, Properties props, ExecutorService executor) {
+        this.url = url;
+        this.props = props;
+        this.listeners = new ConcurrentHashMap<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.ownExecutor = executor == null;
+        this.executor = executor;
+        this.running = new AtomicBoolean();
+        this.dispatched = new AtomicLong();
+        this.reconnects = new AtomicLong();
+    }
+
+    private static Properties credentials(String username, String password) {
+        final Properties props = new Properties();
+        props.setProperty("user", username);
+        props.setProperty("password", password);
+        return props;
+    }
+
+    /**
+     * Register a listener to a channel.
+     * <p>
+     * This may be invoked before or after {@code start()}.
+     *
+     * @param channel Channel name used by <b>NOTIFY</b>, case sensitive
+     * @param listener Listener to be notified
+     */
+    public void subscribe(String channel, Listener listener) {
+        List<Listener> list = listeners.get(channel);
+        if (list == null) {
+            final List<Listener> created = new CopyOnWriteArrayList<>();
+            list = listeners.putIfAbsent(channel, created);
+            if (list == null) {
+                list = created;
+                pending.add("LISTEN " + quote(channel));
+            }
+        }
+        list.add(listener);
+    }
+
+    /**
+     * Remove a listener from a channel.
+     * <p>
+     * The channel is no longer listened to when its last listener is removed.
+     *
+     * @param channel Channel name used by <b>NOTIFY</b>
+     * @param listener Listener to be removed
+     */
+    public void unsubscribe(String channel, Listener listener) {
+        final List<Listener> list = listeners.get(channel);
+        if (list != null && list.remove(listener) && list.isEmpty() && listeners.remove(channel, list)) {
+            pending.add("UNLISTEN " + quote(channel));
+        }
+    }
+
+    /**
+     * Quote a channel name as an identifier, so it is matched with the exact
+     * case and cannot inject SQL.
+     */
+    private static String quote(String channel) {
+        return '"' + channel.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Start the listener thread.
+     *
+     * @return True if started, false if it was already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        if (ownExecutor) {
+            // The previous one was shutdown by stop()
+            executor = Executors.newCachedThreadPool(new BackgroundThreadFactory(PgNotificationDispatcher.class.getSimpleName() + "-Listener"));
+        }
+        thread = new BackgroundThreadFactory(PgNotificationDispatcher.class.getSimpleName()).newThread(new Runnable() {
+            @Override
+            public void run() {
+                listen();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Notification dispatcher started for {}", url);
+        return true;
+    }
+
+    /**
+     * Stop the listener thread and close its connection.
+     * <p>
+     * The executor is also shutdown if it is owned by this dispatcher.
+     */
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            final Thread t = thread;
+            if (t != null) {
+                t.interrupt();
+            }
+            if (ownExecutor) {
+                executor.shutdown();
+            }
+            LOGGER.info("Notification dispatcher stopped...");
+        }
+    }
+
+    /**
+     * Loop of the listener thread, reconnects until stopped.
+     */
+    private void listen() {
+        // A thread of a previous start() exits even if the dispatcher was restarted
+        long delay = 1000;
+        while (running.get() && thread == Thread.currentThread()) {
+            try (Connection conn = DriverManager.getConnection(url, props)) {
+                final PGConnection pgconn = conn instanceof PGConnection ? (PGConnection) conn : conn.unwrap(PGConnection.class);
+                final Method blocking = blockingMethod(pgconn);
+                pending.clear();
+                try (Statement stmt = conn.createStatement()) {
+                    for (String channel : listeners.keySet()) {
+                        stmt.execute("LISTEN " + quote(channel));
+                    }
+                }
+                LOGGER.info("Listening to {}", listeners.keySet());
+                delay = 1000;
+                long lastCheck = System.currentTimeMillis();
+                while (running.get() && thread == Thread.currentThread()) {
+                    String command;
+                    while ((command = pending.poll()) != null) {
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute(command);
+                        }
+                    }
+                    final PGNotification[] notifications = blocking != null
+                            ? (PGNotification[]) blocking.invoke(pgconn, (int) pollInterval)
+                            : pgconn.getNotifications();
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification);
+                        }
+                    }
+                    if (System.currentTimeMillis() - lastCheck >= keepAliveInterval) {
+                        // Detects a broken connection, pgjdbc only notices it on a round trip
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute("SELECT 1");
+                        }
+                        lastCheck = System.currentTimeMillis();
+                    }
+                    if (blocking == null && (notifications == null || notifications.length == 0)) {
+                        Thread.sleep(pollInterval);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.debug("Listener thread interrupted...");
+            } catch (Exception e) {
+                if (!running.get()) {
+                    break;
+                }
+                reconnects.getAndIncrement();
+                LOGGER.warn("Listener connection lost, reconnecting in {} ms... Cause: {}", delay, e.toString());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+            }
+        }
+    }
+
+    private void dispatch(final PGNotification notification) {
+        final List<Listener> list = listeners.get(notification.getName());
+        if (list == null) {
+            return;
+        }
+        try {
+            for (final Listener listener : list) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.notified(notification);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Notification dropped, dispatcher is stopping: {}", notification.getName());
+            return;
+        }
+        dispatched.getAndIncrement();
+        LOGGER.debug("New notification from: {} {}", notification.getName(), notification.getParameter());
+    }
+
+    /**
+     * Find {@code getNotifications(int)} of newer drivers.
+     */
+    private static Method blockingMethod(PGConnection pgconn) {
+        try {
+            return pgconn.getClass().getMethod("getNotifications", int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Set the wait time of each check for new notifications.
+     *
+     * @param pollInterval Interval in millis
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Set the interval of the connection liveness check.
+     *
+     * @param keepAliveInterval Interval in millis
+     */
+    public void setKeepAliveInterval(long keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    /**
+     * Check whether the listener thread is running.
+     *
+     * @return True if running, otherwise false
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Channels currently subscribed.
+     *
+     * @return Channel names
+     */
+    public Set<String> getChannels() {
+        return Collections.unmodifiableSet(listeners.keySet());
+    }
+
+    /**
+     * Number of notifications dispatched.
+     *
+     * @return Dispatched count
+     */
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    /**
+     * Number of reconnections of the listener connection.
+     *
+     * @return Reconnect count
+     */
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+}
@@ -0,0 +1,404 @@
+package my.jutils.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.Pattern;
+import javax.management.*;
+import org.slf4j.*;
+
+/**
+ * Latency and row count of the executed statements, per SQL shape.
+ * <p>
+ * Statements are recorded by the connections wrapped with
+ * {@link InstrumentedConnection} (see {@code SQLUtils.setInstrumented}) and by
+ * {@link QueryProfiler} for {@link XPersist} (see
+ * {@code XPersist.setInstrumented}). Literals are replaced by <i>?</i> and
+ * <b>IN</b> lists are collapsed, so statements that only differ in their
+ * values share the same shape and statistics.
+ * <br />
+ * Statements slower than {@code slowThresholdMillis} are logged as warnings.
+ * Every execution is also passed to the registered {@link Sink}s, so it can
+ * be forwarded to any metrics backend, and the totals are exposed thru JMX as
+ * <i>my.jutils.db:type=QueryMetrics</i>.
+ * <br /><br />
+ * The shape of each SQL string is computed once and cached, since prepared
+ * statements repeat the same SQL.
+ * <br /><br />
+ * Note: <i>At most {@code MAX_SHAPES} shapes are tracked, the rest are
+ * counted under <b>(other)</b>.</i>
+ *
+ * @author Erieze Lagera
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryMetrics.class.getSimpleName());
+
+    /**
+     * Maximum number of tracked shapes.
+     */
+    public static final int MAX_SHAPES = 1000;
+
+    /**
+     * Maximum number of SQL strings whose shape is cached, the cache is
+     * cleared when it is full.
+     */
+    private static final int MAX_CACHED_SQL = 10000;
+
+    /**
+     * Upper bounds in millis of the latency histogram buckets, the last bucket
+     * holds everything slower.
+     */
+    private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER = Pattern.compile("(?<![\\w.$])-?\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final ConcurrentMap<String, String> SHAPE_CACHE = new ConcurrentHashMap<>();
+
+    private static final QueryMetrics INSTANCE = new QueryMetrics();
+
+    private final ConcurrentMap<String, Stats> shapes;
+    private final List<Sink> sinks;
+    private final AtomicLong statements;
+    private final AtomicLong slow;
+    private final AtomicLong errors;
+
+    private volatile long slowThresholdMillis = 1000;
+
+    /**
+     * Receives every recorded execution.
+     */
+    public static interface Sink {
+
+        /**
+         * Invoked on the executing thread, this must return quickly.
+         *
+         * @param shape SQL shape
+         * @param nanos Execution time in nanos
+         * @param rows Rows returned or updated, -1 if unknown
+         * @param error Failure of the statement, null if it succeeded
+         */
+        public void record(String shape, long nanos, long rows, Throwable error);
+
+    }
+
+    private QueryMetrics() {
+        this.shapes = new ConcurrentHashMap<>();
+        this.sinks = new CopyOnWriteArrayList<>();
+        this.statements = new AtomicLong();
+        this.slow = new AtomicLong();
+        this.errors = new AtomicLong();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("my.jutils.db:type=QueryMetrics"));
+        } catch (JMException | SecurityException e) {
+            LOGGER.warn("QueryMetrics is not available thru JMX. Cause: {}", e.toString());
+        }
+    }
+
+    /**
+     * Get the metrics of this JVM.
+     *
+     * @return Shared instance
+     */
+    public static QueryMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replace the literals of an SQL statement.
+     *
+     * @param sql SQL statement
+     * @return Shape of the statement
+     */
+    public static String shape(String sql) {
+        if (sql == null) {
+            return "(unknown)";
+        }
+        String shape = SHAPE_CACHE.get(sql);
+        if (shape == null) {
+            shape = normalize(sql);
+            if (SHAPE_CACHE.size() >= MAX_CACHED_SQL) {
+                // Mostly statements with inlined literals, keep the recent ones only
+                SHAPE_CACHE.clear();
+            }
+            SHAPE_CACHE.put(sql, shape);
+        }
+        return shape;
+    }
+
+    private static String normalize(String sql) {
+        String shape = STRING.matcher(sql).replaceAll("?");
+        shape = NUMBER.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("IN (?)");
+        return SPACES.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * Record an execution.
+     *
+     * @param sql SQL statement, it is reduced to its shape
+     * @param nanos Execution time in nanos
+     * @param rows Rows returned or updated, -1 if unknown
+     * @param error Failure of the statement, null if it succeeded
+     */
+    public void record(String sql, long nanos, long rows, Throwable error) {
+        final String shape = shape(sql);
+        stats(shape).add(nanos, rows, error != null);
+        statements.getAndIncrement();
+        if (error != null) {
+            errors.getAndIncrement();
+        }
+        if (nanos >= slowThresholdMillis * 1000000) {
+            slow.getAndIncrement();
+            LOGGER.warn("Slow statement ({} ms, {} rows): {}", nanos / 1000000, rows, shape);
+        }
+        for (Sink sink : sinks) {
+            try {
+                sink.record(shape, nanos, rows, error);
+            } catch (RuntimeException e) {
+                LOGGER.error("Cause: {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Add rows read after the execution was recorded, such as the rows of a
+     * ResultSet counted when it is closed.
+     *
+     * @param sql SQL statement, it is reduced to its shape
+     * @param rows Rows read
+     */
+    public void recordRows(String sql, long rows) {
+        stats(shape(sql)).rows.getAndAdd(rows);
+    }
+
+    private Stats stats(String shape) {
+        Stats stats = shapes.get(shape);
+        if (stats == null) {
+            if (shapes.size() >= MAX_SHAPES) {
+                shape = "(other)";
+            }
+            final Stats created = new Stats(shape);
+            stats = shapes.putIfAbsent(shape, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Register a sink of the executions.
+     *
+     * @param sink Sink to be added
+     */
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Remove a sink of the executions.
+     *
+     * @param sink Sink to be removed
+     */
+    public void removeSink(Sink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Statistics of a shape.
+     *
+     * @param sql SQL statement or shape
+     * @return Statistics, null if it was not executed yet
+     */
+    public Stats getStats(String sql) {
+        return shapes.get(shape(sql));
+    }
+
+    /**
+     * Statistics of every shape, slowest total time first.
+     *
+     * @return Statistics of each shape
+     */
+    public List<Stats> getAllStats() {
+        final List<Stats> list = new ArrayList<>(shapes.values());
+        Collections.sort(list, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                return Long.compare(b.totalNanos.get(), a.totalNanos.get());
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statements.get();
+    }
+
+    @Override
+    public long getSlowCount() {
+        return slow.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+    @Override
+    public long getSlowThresholdMillis() {
+        return slowThresholdMillis;
+    }
+
+    @Override
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        this.slowThresholdMillis = slowThresholdMillis;
+    }
+
+    @Override
+    public String[] getTopShapes() {
+        final List<Stats> list = getAllStats();
+        final String[] top = new String[Math.min(20, list.size())];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = list.get(i).toString();
+        }
+        return top;
+    }
+
+    @Override
+    public void reset() {
+        shapes.clear();
+        statements.set(0);
+        slow.set(0);
+        errors.set(0);
+    }
+
+    /**
+     * Statistics of a SQL shape.
+     */
+    public static class Stats {
+
+        private final String shape;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+        private Stats(String shape) {
+            this.shape = shape;
+        }
+
+        private void add(long nanos, long rows, boolean error) {
+            count.getAndIncrement();
+            totalNanos.getAndAdd(nanos);
+            if (rows > 0) {
+                this.rows.getAndAdd(rows);
+            }
+            if (error) {
+                errors.getAndIncrement();
+            }
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+            final long millis = nanos / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis >= BUCKETS[bucket]) {
+                bucket++;
+            }
+            histogram.getAndIncrement(bucket);
+        }
+
+        /**
+         * SQL shape.
+         *
+         * @return Shape
+         */
+        public String getShape() {
+            return shape;
+        }
+
+        /**
+         * Number of executions.
+         *
+         * @return Execution count
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Number of failed executions.
+         *
+         * @return Error count
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * Total rows returned or updated.
+         *
+         * @return Rows
+         */
+        public long getRows() {
+            return rows.get();
+        }
+
+        /**
+         * Average execution time.
+         *
+         * @return Latency in millis
+         */
+        public double getAverageMillis() {
+            final long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / (n * 1000000d);
+        }
+
+        /**
+         * Slowest execution time.
+         *
+         * @return Latency in millis
+         */
+        public double getMaxMillis() {
+            return maxNanos.get() / 1000000d;
+        }
+
+        /**
+         * Latency histogram.
+         * <p>
+         * Keys are the upper bound of each bucket in millis, in ascending
+         * order, and {@code Long.MAX_VALUE} for the last one.
+         *
+         * @return Count per bucket
+         */
+        public Map<Long, Long> getHistogram() {
+            final Map<Long, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < histogram.length(); i++) {
+                map.put(i < BUCKETS.length ? BUCKETS[i] : Long.MAX_VALUE, histogram.get(i));
+            }
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, avg=%.2fms, max=%.2fms, rows=%d, errors=%d: %s",
+                    count.get(), getAverageMillis(), getMaxMillis(), rows.get(), errors.get(), shape);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package my.jutils.db;
+
+/**
+ * JMX view of {@link QueryMetrics}.
+ *
+ * @author Erieze Lagera
+ */
+public interface QueryMetricsMBean {
+
+    /**
+     * Number of statements recorded.
+     *
+     * @return Statement count
+     */
+    public long getStatementCount();
+
+    /**
+     * Number of statements slower than the threshold.
+     *
+     * @return Slow statement count
+     */
+    public long getSlowCount();
+
+    /**
+     * Number of failed statements.
+     *
+     * @return Error count
+     */
+    public long getErrorCount();
+
+    /**
+     * Number of distinct SQL shapes.
+     *
+     * @return Shape count
+     */
+    public int getShapeCount();
+
+    /**
+     * Time above which a statement is logged as slow.
+     *
+     * @return Threshold in millis
+     */
+    public long getSlowThresholdMillis();
+
+    /**
+     * Set the time above which a statement is logged as slow.
+     *
+     * @param slowThresholdMillis Threshold in millis
+     */
+    public void setSlowThresholdMillis(long slowThresholdMillis);
+
+    /**
+     * Statistics of the 20 shapes with the highest total time.
+     *
+     * @return One line per shape
+     */
+    public String[] getTopShapes();
+
+    /**
+     * Clear every statistic.
+     */
+    public void reset();
+
+}
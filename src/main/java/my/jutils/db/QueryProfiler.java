@@ -0,0 +1,84 @@
+package my.jutils.db;
+
+import java.util.*;
+import org.eclipse.persistence.exceptions.*;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.*;
+
+/**
+ * EclipseLink session listener that records every query to
+ * {@link QueryMetrics}.
+ * <p>
+ * This is registered thru the <i>eclipselink.session-event-listener</i>
+ * property by {@code XPersist.setInstrumented(true)}, or may be set in
+ * <b>persistence.xml</b>. The time is measured from {@code preExecuteQuery}
+ * to {@code postExecuteQuery}, and includes the building of the entities.
+ * Rows are the size of the result list, or the updated rows of a modify
+ * query.
+ * <br />
+ * Failed queries never reach {@code postExecuteQuery}, they are recorded as
+ * errors thru the <i>eclipselink.exception-handler</i> property, which
+ * {@code XPersist.setInstrumented(true)} sets to this class too. The
+ * exception is thrown again as if there was no handler.
+ *
+ * @author Erieze Lagera
+ */
+public class QueryProfiler extends SessionEventAdapter implements ExceptionHandler {
+
+    /**
+     * Start time of the queries running on the current thread, a query may
+     * run nested queries.
+     */
+    private static final ThreadLocal<Map<DatabaseQuery, Long>> STARTS = new ThreadLocal<Map<DatabaseQuery, Long>>() {
+        @Override
+        protected Map<DatabaseQuery, Long> initialValue() {
+            return new IdentityHashMap<>();
+        }
+    };
+
+    @Override
+    public void preExecuteQuery(SessionEvent event) {
+        final Map<DatabaseQuery, Long> starts = STARTS.get();
+        if (starts.size() > 64) {
+            // Queries that failed never reach postExecuteQuery
+            starts.clear();
+        }
+        starts.put(event.getQuery(), System.nanoTime());
+    }
+
+    @Override
+    public void postExecuteQuery(SessionEvent event) {
+        final Long start = STARTS.get().remove(event.getQuery());
+        if (start == null) {
+            return;
+        }
+        final Object result = event.getResult();
+        final long rows = result instanceof Collection ? ((Collection<?>) result).size()
+                : result instanceof Number ? ((Number) result).longValue()
+                : result == null ? 0 : 1;
+        QueryMetrics.get().record(sql(event.getQuery()), System.nanoTime() - start, rows, null);
+    }
+
+    @Override
+    public Object handleException(RuntimeException exception) {
+        final DatabaseQuery query = exception instanceof DatabaseException ? ((DatabaseException) exception).getQuery()
+                : exception instanceof QueryException ? ((QueryException) exception).getQuery()
+                : null;
+        final Long start = query == null ? null : STARTS.get().remove(query);
+        if (start != null) {
+            QueryMetrics.get().record(sql(query), System.nanoTime() - start, -1, exception);
+        }
+        throw exception;
+    }
+
+    private static String sql(DatabaseQuery query) {
+        if (query.getSQLString() != null) {
+            return query.getSQLString();
+        }
+        if (query.getJPQLString() != null) {
+            return query.getJPQLString();
+        }
+        return query.getClass().getSimpleName() + (query.getReferenceClass() != null ? " " + query.getReferenceClass().getSimpleName() : "");
+    }
+
+}
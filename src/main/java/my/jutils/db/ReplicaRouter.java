@@ -0,0 +1,478 @@
+package my.jutils.db;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.persistence.*;
+import my.jutils.services.BackgroundThreadFactory;
+import org.slf4j.*;
+
+/**
+ * Routes read-only work to streaming replicas and writes to the primary.
+ * <p>
+ * Each server gets its own {@link XPersistUnit} of the same persistence
+ * unit. Reads ({@code find}, {@code query}, {@code stream} and
+ * {@code createReadManager}) go to a healthy replica, selected by
+ * {@link Strategy#RoundRobin} or {@link Strategy#LeastLatency}, while
+ * {@code createWriteManager} always goes to the primary.
+ * <br />
+ * A background task runs the health query on every replica each
+ * {@code checkInterval}, the replicas are checked in parallel. The query
+ * returns the replication lag in seconds; a replica lagging more than
+ * {@code maxLag}, returning a NULL or non-numeric lag, failing the query or
+ * not answering within {@code checkTimeout} is skipped until it recovers.
+ * When no replica is healthy, reads fall back to the primary.
+ * <br />
+ * For plain JDBC thru {@link SQLUtils}, use {@code getReadServer()} and
+ * {@code getWriteServer()} as the server host.
+ * <br /><br />
+ * Note: <i>The default health query reports no lag when the replica replayed
+ * all the WAL it received, so an idle primary does not make the replicas
+ * lag. Otherwise it reports the age of the last replayed transaction. A
+ * replica whose WAL receiver is disconnected is not detected by this, since
+ * it still replayed everything it received.</i> <br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final ReplicaRouter router = new ReplicaRouter("MyPU", "192.168.1.10", Arrays.asList("192.168.1.11", "192.168.1.12")); <br />
+ * router.start(); <br />
+ * final List&lt;Product&gt; products = router.query("SELECT p FROM Product p", Product.class);
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class ReplicaRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRouter.class.getSimpleName());
+
+    /**
+     * Replication lag in seconds, 0 if every received WAL was replayed, NULL
+     * if the server is not a replica or nothing was replayed yet.
+     */
+    public static final String DEFAULT_HEALTH_QUERY = "SELECT CASE WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    /**
+     * Query timeout hint of JPA, in millis.
+     */
+    private static final String QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
+    private final String pu;
+    private final String primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next;
+    private final AtomicLong fallbacks;
+
+    private volatile Strategy strategy = Strategy.RoundRobin;
+    private volatile String healthQuery = DEFAULT_HEALTH_QUERY;
+    private volatile double maxLag = 10;
+    private volatile long checkInterval = 5000;
+    private volatile long checkTimeout = 2000;
+    private ScheduledExecutorService checker;
+    private final ExecutorService probes;
+
+    /**
+     * How a replica is selected among the healthy ones.
+     */
+    public static enum Strategy {
+
+        /**
+         * Each replica in turn.
+         */
+        RoundRobin,
+        /**
+         * The replica with the lowest average health query latency.
+         */
+        LeastLatency
+    }
+
+    /**
+     * Create new router.
+     * <p>
+     * Replicas are considered healthy until the first health check, which
+     * runs when {@code start()} is invoked.
+     *
+     * @param pu Persistence Unit name
+     * @param primary IP address of the primary server
+     * @param replicas IP addresses of the replica servers
+     */
+    public ReplicaRouter(String pu, String primary, List<String> replicas) {
+        this.pu = pu;
+        this.primary = primary;
+        final List<Replica> list = new ArrayList<>();
+        for (String server : replicas) {
+            list.add(new Replica(server));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+        this.next = new AtomicInteger();
+        this.fallbacks = new AtomicLong();
+        this.probes = Executors.newCachedThreadPool(daemon(new BackgroundThreadFactory(ReplicaRouter.class.getSimpleName() + "-" + pu + "-Probe")));
+    }
+
+    private static ThreadFactory daemon(final ThreadFactory factory) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = factory.newThread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * State of a replica, updated by the health check.
+     */
+    private static class Replica {
+
+        private final String server;
+        private volatile boolean healthy = true;
+        private volatile double lag;
+        private volatile double latencyMillis;
+        private final AtomicLong reads = new AtomicLong();
+
+        /**
+         * Health query still running, a hung replica is not queried again
+         * until it answers.
+         */
+        private Future<?> probe;
+
+        Replica(String server) {
+            this.server = server;
+        }
+    }
+
+    /**
+     * Start the periodic health check of the replicas.
+     */
+    public synchronized void start() {
+        if (checker != null) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(daemon(new BackgroundThreadFactory(ReplicaRouter.class.getSimpleName() + "-" + pu)));
+        checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, 0, checkInterval, TimeUnit.MILLISECONDS);
+        LOGGER.info("Replica router started for {} with replicas {}", primary, getReplicaServers());
+    }
+
+    /**
+     * Stop the health check.
+     * <p>
+     * The units are left open since they are shared thru the
+     * {@link XPersistUnit} registry.
+     */
+    public synchronized void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+    }
+
+    /**
+     * Run the health query on every replica once, in parallel.
+     * <p>
+     * Returns after every replica answered or {@code checkTimeout} elapsed,
+     * the replicas that did not answer in time are unhealthy.
+     */
+    public void check() {
+        final Map<Replica, Future<?>> running = new LinkedHashMap<>();
+        for (final Replica replica : replicas) {
+            synchronized (replica) {
+                if (replica.probe != null && !replica.probe.isDone()) {
+                    markUnhealthy(replica, "previous health check is still running");
+                    continue;
+                }
+                replica.probe = probes.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        probe(replica);
+                    }
+                });
+                running.put(replica, replica.probe);
+            }
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(checkTimeout);
+        for (Map.Entry<Replica, Future<?>> entry : running.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                markUnhealthy(entry.getKey(), "no answer within " + checkTimeout + " ms");
+            } catch (ExecutionException e) {
+                markUnhealthy(entry.getKey(), e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run the health query on a replica.
+     */
+    private void probe(Replica replica) {
+        final long start = System.nanoTime();
+        final Object result;
+        try {
+            final EntityManager em = XPersistUnit.get(pu, replica.server).createManager();
+            try {
+                result = em.createNativeQuery(healthQuery).setHint(QUERY_TIMEOUT, (int) checkTimeout).getSingleResult();
+            } finally {
+                em.close();
+            }
+        } catch (RuntimeException e) {
+            markUnhealthy(replica, e.toString());
+            return;
+        }
+        final double millis = (System.nanoTime() - start) / 1000000d;
+        // Moving average, so that one slow check does not flip the selection
+        replica.latencyMillis = replica.latencyMillis == 0 ? millis : replica.latencyMillis * 0.8 + millis * 0.2;
+        final double lag = result instanceof Number ? ((Number) result).doubleValue() : Double.NaN;
+        if (Double.isNaN(lag)) {
+            replica.lag = Double.NaN;
+            markUnhealthy(replica, "health query returned " + result);
+            return;
+        }
+        replica.lag = lag;
+        final boolean healthy = lag <= maxLag;
+        if (healthy != replica.healthy) {
+            LOGGER.warn("Replica {} is now {}, lag {}s", replica.server, healthy ? "healthy" : "lagging", lag);
+        }
+        replica.healthy = healthy;
+    }
+
+    private static void markUnhealthy(Replica replica, String cause) {
+        if (replica.healthy) {
+            LOGGER.warn("Replica {} failed the health check. Cause: {}", replica.server, cause);
+        }
+        replica.healthy = false;
+    }
+
+    /**
+     * Server for read-only work.
+     *
+     * @return IP address of a healthy replica, or the primary if none
+     */
+    public String getReadServer() {
+        final Replica replica = select();
+        return replica != null ? replica.server : primary;
+    }
+
+    /**
+     * Server for writes.
+     *
+     * @return IP address of the primary
+     */
+    public String getWriteServer() {
+        return primary;
+    }
+
+    private Replica select() {
+        final List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy.add(replica);
+            }
+        }
+        if (healthy.isEmpty()) {
+            if (!replicas.isEmpty()) {
+                fallbacks.getAndIncrement();
+                LOGGER.debug("No healthy replica, reading from primary {}", primary);
+            }
+            return null;
+        }
+        Replica selected;
+        if (strategy == Strategy.LeastLatency) {
+            selected = healthy.get(0);
+            for (Replica replica : healthy) {
+                if (replica.latencyMillis < selected.latencyMillis) {
+                    selected = replica;
+                }
+            }
+        } else {
+            selected = healthy.get((next.getAndIncrement() & Integer.MAX_VALUE) % healthy.size());
+        }
+        selected.reads.getAndIncrement();
+        return selected;
+    }
+
+    /**
+     * Create new EntityManager for read-only work. This EntityManager have to
+     * be closed explicity.
+     *
+     * @return EntityManager of a healthy replica, or of the primary if none
+     */
+    public EntityManager createReadManager() {
+        return XPersistUnit.get(pu, getReadServer()).createManager();
+    }
+
+    /**
+     * Create new EntityManager for writes. This EntityManager have to be
+     * closed explicity.
+     *
+     * @return EntityManager of the primary
+     */
+    public EntityManager createWriteManager() {
+        return XPersistUnit.get(pu, primary).createManager();
+    }
+
+    /**
+     * Find an entity on a replica.
+     *
+     * @param <T> Type of the entity
+     * @param entityClass Entity class
+     * @param id Primary key
+     * @return Entity, null if not found
+     */
+    public <T> T find(Class<T> entityClass, Object id) {
+        final EntityManager em = createReadManager();
+        try {
+            return em.find(entityClass, id);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Execute a JPQL query on a replica.
+     * <p>
+     * Parameters are bound by position, starting from <i>?1</i>.
+     *
+     * @param <T> Type of the result
+     * @param jpql JPQL query
+     * @param resultClass Type of the result
+     * @param params Positional parameters
+     * @return Result list
+     */
+    public <T> List<T> query(String jpql, Class<T> resultClass, Object... params) {
+        final EntityManager em = createReadManager();
+        try {
+            final TypedQuery<T> query = em.createQuery(jpql, resultClass);
+            for (int i = 0; i < params.length; i++) {
+                query.setParameter(i + 1, params[i]);
+            }
+            return query.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Read a JPQL query result lazily on a replica.
+     *
+     * @param <T> Type of the result
+     * @param jpql JPQL query
+     * @param resultClass Type of the result
+     * @param fetchSize Rows per round trip
+     * @param params Positional parameters
+     * @return Open cursor
+     * @see XPersist#stream(java.lang.String, java.lang.Class, int, java.lang.Object...)
+     */
+    public <T> XPersist.Cursor<T> stream(String jpql, Class<T> resultClass, int fetchSize, Object... params) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("ReplicaRouter -> [ERROR] fetchSize must be greater than zero.");
+        }
+        return XPersist.stream(createReadManager(), jpql, resultClass, fetchSize, params);
+    }
+
+    /**
+     * Set how a replica is selected.
+     *
+     * @param strategy Selection strategy
+     */
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Set the query returning the replication lag in seconds. A NULL or
+     * non-numeric result marks the replica as unhealthy.
+     *
+     * @param healthQuery Native SQL query
+     */
+    public void setHealthQuery(String healthQuery) {
+        this.healthQuery = healthQuery;
+    }
+
+    /**
+     * Set the maximum replication lag of a healthy replica.
+     *
+     * @param maxLag Lag in seconds
+     */
+    public void setMaxLag(double maxLag) {
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Set the time a replica has to answer the health query.
+     *
+     * @param checkTimeout Timeout in millis
+     */
+    public void setCheckTimeout(long checkTimeout) {
+        this.checkTimeout = checkTimeout;
+    }
+
+    /**
+     * Set the interval of the health check, this must be invoked before
+     * {@code start()}.
+     *
+     * @param checkInterval Interval in millis
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Servers of the replicas.
+     *
+     * @return IP addresses
+     */
+    public List<String> getReplicaServers() {
+        final List<String> servers = new ArrayList<>();
+        for (Replica replica : replicas) {
+            servers.add(replica.server);
+        }
+        return servers;
+    }
+
+    /**
+     * Servers of the replicas that passed the last health check.
+     *
+     * @return IP addresses
+     */
+    public List<String> getHealthyServers() {
+        final List<String> servers = new ArrayList<>();
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                servers.add(replica.server);
+            }
+        }
+        return servers;
+    }
+
+    /**
+     * Number of reads sent to the primary because no replica was healthy.
+     *
+     * @return Fallback count
+     */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ReplicaRouter[primary=").append(primary);
+        for (Replica replica : replicas) {
+            sb.append(", ").append(replica.server).append("(healthy=").append(replica.healthy)
+                    .append(", lag=").append(replica.lag).append("s, latency=")
+                    .append(String.format("%.1f", replica.latencyMillis)).append("ms, reads=")
+                    .append(replica.reads).append(")");
+        }
+        return sb.append(", fallbacks=").append(fallbacks).append("]").toString();
+    }
+
+}
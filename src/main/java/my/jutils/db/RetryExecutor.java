@@ -0,0 +1,278 @@
+package my.jutils.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.*;
+import org.slf4j.*;
+
+/**
+ * Runs units of work in their own transaction, retrying the transient
+ * failures.
+ * <p>
+ * A failure is retried when {@link SQLErrorCode#lookup(java.lang.Throwable)}
+ * classifies its SQLSTATE as retryable, such as serialization failures
+ * (40001), deadlocks (40P01) and connection exceptions (08xxx). Each retry
+ * waits for a random delay between zero and an exponentially growing bound
+ * (full jitter), so that contending transactions spread out instead of
+ * colliding again. Other failures, and the last failure once
+ * {@code maxAttempts} is reached, are thrown to the caller.
+ * <br />
+ * One executor may be shared across threads, its counters are cumulative.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final RetryExecutor retry = new RetryExecutor().setMaxAttempts(5); <br />
+ * final Product product = retry.execute(new RetryExecutor.UnitOfWork&lt;Product&gt;() { <br />
+ * <blockquote>
+ * public Product run(EntityManager em) { <br />
+ * <blockquote>
+ * final Product p = em.find(Product.class, id); <br />
+ * p.setStock(p.getStock() - 1); <br />
+ * return p; <br />
+ * </blockquote>
+ * } <br />
+ * </blockquote>
+ * });
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class RetryExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryExecutor.class.getSimpleName());
+
+    private final XPersistUnit unit;
+
+    private int maxAttempts = 3;
+    private long baseDelay = 50;
+    private long maxDelay = 2000;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * A unit of work, executed in a transaction that is committed when it
+     * returns.
+     *
+     * @param <T> Type of the result
+     */
+    public static interface UnitOfWork<T> {
+
+        /**
+         * Do the work. This may be invoked more than once, so it must not
+         * have side effects outside the given EntityManager.
+         *
+         * @param em EntityManager with an active transaction
+         * @return Result of the work
+         * @throws Exception If the work failed, the transaction is rolled back
+         */
+        public T run(EntityManager em) throws Exception;
+
+    }
+
+    /**
+     * Create new executor for the EntityManagerFactory of {@link XPersist}.
+     */
+    public RetryExecutor() {
+        this(null);
+    }
+
+    /**
+     * Create new executor for the given unit.
+     *
+     * @param unit Unit to create the EntityManager from, null for
+     * {@link XPersist}
+     */
+    public RetryExecutor(XPersistUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Run the unit of work, retrying transient failures.
+     *
+     * @param <T> Type of the result
+     * @param work Unit of work
+     * @return Result of the committed work
+     * @throws PersistenceException If the work failed with a non-retryable
+     * failure or ran out of attempts, checked exceptions are wrapped
+     */
+    public <T> T execute(UnitOfWork<T> work) {
+        executions.getAndIncrement();
+        for (int attempt = 1;; attempt++) {
+            try {
+                return attempt(work);
+            } catch (Exception e) {
+                final SQLErrorCode.SQLState state = SQLErrorCode.lookup(e);
+                if (!state.isRetryable()) {
+                    failures.getAndIncrement();
+                    throw rethrow(e);
+                }
+                if (attempt >= maxAttempts) {
+                    exhausted.getAndIncrement();
+                    LOGGER.error("Giving up after {} attempts. Cause: {}", attempt, state);
+                    throw rethrow(e);
+                }
+                final long delay = delay(attempt);
+                retries.getAndIncrement();
+                LOGGER.warn("Attempt {} failed with {}, retrying in {} ms...", attempt, state, delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failures.getAndIncrement();
+                    throw new PersistenceException("RetryExecutor -> [ERROR] Interrupted while waiting to retry.", e);
+                }
+            }
+        }
+    }
+
+    private <T> T attempt(UnitOfWork<T> work) throws Exception {
+        final EntityManager em = unit != null ? unit.createManager() : XPersist.createManager();
+        try {
+            em.getTransaction().begin();
+            final T result = work.run(em);
+            em.getTransaction().commit();
+            return result;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Full jitter, random between zero and the exponential bound.
+     */
+    private long delay(int attempt) {
+        final long bound = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private static RuntimeException rethrow(Exception e) {
+        return e instanceof RuntimeException ? (RuntimeException) e : new PersistenceException(e);
+    }
+
+    /**
+     * Create new record, retrying transient failures.
+     *
+     * @param entity Instance of an Entity class that contains the fields values
+     * which will be used in creating new record
+     * @return True if record created successfully, otherwise false
+     */
+    public boolean create(final Object entity) {
+        try {
+            execute(new UnitOfWork<Object>() {
+                @Override
+                public Object run(EntityManager em) {
+                    em.persist(entity);
+                    return entity;
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Update record, retrying transient failures.
+     *
+     * @param entity Instance of an Entity Class that contains the updated
+     * fields
+     * @return True if given entity updated successfully, otherwise false
+     */
+    public boolean update(final Object entity) {
+        try {
+            execute(new UnitOfWork<Object>() {
+                @Override
+                public Object run(EntityManager em) {
+                    return em.merge(entity);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Set the maximum number of attempts, including the first one.
+     *
+     * @param maxAttempts Maximum attempts
+     * @return This executor
+     */
+    public RetryExecutor setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("RetryExecutor -> [ERROR] maxAttempts must be greater than zero.");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Set the delay bounds, the bound doubles on each retry up to
+     * {@code maxDelay}.
+     *
+     * @param baseDelay Bound of the first retry in millis
+     * @param maxDelay Maximum bound in millis
+     * @return This executor
+     */
+    public RetryExecutor setDelay(long baseDelay, long maxDelay) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("RetryExecutor -> [ERROR] Invalid delay bounds.");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * Number of units of work executed.
+     *
+     * @return Execution count
+     */
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    /**
+     * Number of retries made.
+     *
+     * @return Retry count
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Number of units of work that failed on every attempt.
+     *
+     * @return Exhausted count
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    /**
+     * Number of units of work that failed with a non-retryable failure.
+     *
+     * @return Failure count
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryExecutor[executions=" + executions + ", retries=" + retries
+                + ", exhausted=" + exhausted + ", failures=" + failures + "]";
+    }
+
+}
@@ -2,10 +2,14 @@ package my.jutils.db;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import my.jutils.Utils;
 import org.slf4j.*;
@@ -19,6 +23,22 @@ public class SQLUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SQLUtils.class.getSimpleName());
 
+    /**
+     * Maximum number of generated statements kept by {@code TEMPLATES}.
+     */
+    private static final int MAX_TEMPLATES = 512;
+
+    /**
+     * Generated statements keyed by kind, table and columns.
+     */
+    private static final ConcurrentMap<String, String> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Wrap the connections from {@code setConnection} with
+     * {@link InstrumentedConnection}?
+     */
+    private static volatile boolean INSTRUMENTED;
+
     /**
      * Test your database connection.
      *
@@ -31,22 +51,35 @@ public class SQLUtils {
      * @return True if the test is successful, otherwise false
      */
     public static boolean doTestConnection(String dbServer, String serverIP, String serverPort, String dbName, String username, String password) {
-        final AtomicBoolean result = new AtomicBoolean();
-        final String url = "jdbc:" + dbServer + "://" + serverIP + ":" + serverPort + "/" + dbName;
-        final Properties props = new Properties();
-        props.setProperty("user", username);
-        props.setProperty("password", password);
-
-        if (dbServer.equalsIgnoreCase("mysql")) {
-            dbServer += ".jdbc";
-        }
+        return doTestConnection(dbServer, serverIP, serverPort, dbName, username, password, false);
+    }
 
+    /**
+     * Test your database connection.
+     * <p>
+     * If {@code pooled} is true, the test borrows a connection from the shared
+     * {@link ConnectionPool} of the given database, which also warms up the
+     * pool.
+     *
+     * @param dbServer Database server that you are using
+     * @param serverIP Database server host
+     * @param serverPort Database server port
+     * @param dbName Database name
+     * @param username User of the database
+     * @param password Nothing is special here
+     * @param pooled Draw the connection from the shared pool?
+     * @return True if the test is successful, otherwise false
+     * @see ConnectionPool
+     */
+    public static boolean doTestConnection(String dbServer, String serverIP, String serverPort, String dbName, String username, String password, boolean pooled) {
+        final AtomicBoolean result = new AtomicBoolean();
         try {
-            Class.forName("org." + dbServer + ".Driver");
-            final Connection db = DriverManager.getConnection(url, props);
+            final Connection db = pooled
+                    ? ConnectionPool.getPool(dbServer, serverIP, serverPort, dbName, username, password).borrow()
+                    : openConnection(dbServer, serverIP, serverPort, dbName, username, password);
             db.close();
             result.set(true);
-        } catch (ClassNotFoundException | SQLException e) {
+        } catch (SQLException e) {
             LOGGER.error("Cause: {}", e.toString(), e);
             Utils.setDelay(500);
             result.set(false);
@@ -82,36 +115,144 @@ public class SQLUtils {
      * @return Configured connection
      */
     public static Connection setConnection(String dbServer, String serverIP, String serverPort, String dbName, String username, String password) {
+        return setConnection(dbServer, serverIP, serverPort, dbName, username, password, false);
+    }
+
+    /**
+     * Create a Connection.
+     * <p>
+     * This method will return a database connection with
+     * success testing, null if error is found on connection.
+     * <br />
+     * If {@code pooled} is true, the connection is borrowed from the shared
+     * {@link ConnectionPool} of the given database, and invoking
+     * {@code close()} on it returns it to the pool.
+     *
+     * @param dbServer Database server that you are using
+     * @param serverIP Database server host
+     * @param serverPort Database server port
+     * @param dbName Database name
+     * @param username User of the database
+     * @param password Nothing is special here
+     * @param pooled Draw the connection from the shared pool?
+     * @return Configured connection
+     * @see ConnectionPool
+     */
+    public static Connection setConnection(String dbServer, String serverIP, String serverPort, String dbName, String username, String password, boolean pooled) {
         Connection result = null;
         try {
-            final String url = "jdbc:" + dbServer + "://" + serverIP + ":" + serverPort + "/" + dbName;
-            final Properties props = new Properties();
-            props.setProperty("user", username);
-            props.setProperty("password", password);
-
-            if (dbServer.equalsIgnoreCase("mysql")) {
-                dbServer += ".jdbc";
+            result = pooled
+                    ? ConnectionPool.getPool(dbServer, serverIP, serverPort, dbName, username, password).borrow()
+                    : openConnection(dbServer, serverIP, serverPort, dbName, username, password);
+            if (INSTRUMENTED) {
+                result = InstrumentedConnection.wrap(result);
             }
-
-            Class.forName("org." + dbServer + ".Driver");
-            result = DriverManager.getConnection(url, props);
-        } catch (ClassNotFoundException | SQLException e) {
+        } catch (SQLException e) {
             LOGGER.error("Cause: {}", e.toString(), e);
         }
         return result;
     }
 
+    /**
+     * Record the statements of the connections from {@code setConnection} to
+     * {@link QueryMetrics}.
+     * <p>
+     * Only the connections returned after this is invoked are affected.
+     *
+     * @param instrumented Instrument the connections?
+     */
+    public static void setInstrumented(boolean instrumented) {
+        INSTRUMENTED = instrumented;
+    }
+
+    /**
+     * Open a new physical connection thru {@code DriverManager}.
+     */
+    private static Connection openConnection(String dbServer, String serverIP, String serverPort, String dbName, String username, String password) throws SQLException {
+        final Properties props = new Properties();
+        props.setProperty("user", username);
+        props.setProperty("password", password);
+        loadDriver(dbServer);
+        return DriverManager.getConnection(toURL(dbServer, serverIP, serverPort, dbName), props);
+    }
+
+    /**
+     * Build the JDBC URL of the given database.
+     */
+    static String toURL(String dbServer, String serverIP, String serverPort, String dbName) {
+        return "jdbc:" + dbServer + "://" + serverIP + ":" + serverPort + "/" + dbName;
+    }
+
+    /**
+     * Load the JDBC driver of the given database server.
+     */
+    static void loadDriver(String dbServer) throws SQLException {
+        if (dbServer.equalsIgnoreCase("mysql")) {
+            dbServer += ".jdbc";
+        }
+        try {
+            Class.forName("org." + dbServer + ".Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found for " + dbServer, "08001", e);
+        }
+    }
+
     /**
      * Generate SQL statement, finding row by id.
      *
      * @param id Id of the row
      * @param table_name Your table/entity name
      * @return Generated SQL <b>SELECT</b> statement
+     * @deprecated The id is concatenated into the statement, which is open to
+     * SQL injection and cannot reuse a server-side plan. Use
+     * {@link SQLUtils#findById(java.lang.String)} or
+     * {@link SQLUtils#prepareFindById(java.sql.Connection, java.lang.String, java.lang.Object)}
+     * instead.
      */
+    @Deprecated
     public static String findById(String id, String table_name) {
         return "SELECT * FROM " + table_name + " WHERE id = " + id;
     }
 
+    /**
+     * Generate SQL statement, finding row by id thru a <i>?</i> placeholder.
+     *
+     * @param table_name Your table/entity name
+     * @return Generated SQL <b>SELECT</b> statement
+     */
+    public static String findById(String table_name) {
+        final String key = "findById|" + table_name;
+        String query = TEMPLATES.get(key);
+        if (query == null) {
+            query = "SELECT * FROM " + table_name + " WHERE id = ?";
+            cache(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * Prepare the statement finding row by id, with the id already bound.
+     * <p>
+     * On a connection of {@link ConnectionPool}, the statement comes from its
+     * {@link StatementCache}.
+     *
+     * @param conn Connection to be used
+     * @param table_name Your table/entity name
+     * @param id Id of the row
+     * @return Statement ready to be executed, this must be closed after use
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public static PreparedStatement prepareFindById(Connection conn, String table_name, Object id) throws SQLException {
+        final PreparedStatement stmt = conn.prepareStatement(findById(table_name));
+        try {
+            stmt.setObject(1, id);
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+
     /**
      * Generate SQL statement, insert query.
      *
@@ -120,26 +261,7 @@ public class SQLUtils {
      * @return Generated SQL <b>INSERT</b> statement
      */
     public static String insertQuery(ArrayList<String> columns, String table_name) {
-        final StringBuilder query = new StringBuilder();
-        query.append("INSERT INTO ").append(table_name).append(" (");
-        for (int i = 0; i < columns.size(); i++) {
-            if (i != columns.size() - 1) {
-                query.append(" ").append(columns.get(i)).append(", ");
-            } else {
-                query.append(" ").append(columns.get(i)).append(" ");
-            }
-        }
-        query.append(") VALUES (");
-        for (int i = 0; i < columns.size(); i++) {
-            if (i != columns.size() - 1) {
-                query.append(" ?, ");
-            } else {
-                query.append(" ? ");
-            }
-        }
-        query.append(")");
-
-        return query.toString();
+        return insertQuery(columns, table_name, 1);
     }
 
     /**
@@ -150,9 +272,56 @@ public class SQLUtils {
      * @return Generated SQL <b>INSERT</b> statement
      */
     public static String insertQuery(LinkedList<String> columns, String table_name) {
+        return insertQuery(columns, table_name, 1);
+    }
+
+    /**
+     * Generate SQL statement, multi-row insert query.
+     * <p>
+     * This generates one <b>INSERT</b> statement with {@code rows} groups of
+     * placeholders, so several rows are written in a single round trip.
+     * <br />
+     * Eg. <i>INSERT INTO foo ( a, b ) VALUES ( ?, ? ), ( ?, ? )</i>
+     *
+     * @param columns Source of columns
+     * @param table_name Your table/entity name
+     * @param rows Number of rows in the statement
+     * @return Generated SQL <b>INSERT</b> statement
+     */
+    public static String insertQuery(List<String> columns, String table_name, int rows) {
+        final String key = "insert|" + table_name + "|" + columns + "|" + rows;
+        final String cached = TEMPLATES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final StringBuilder values = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            values.append(i != columns.size() - 1 ? " ?," : " ? ");
+        }
+        values.append(")");
+        final StringBuilder query = new StringBuilder(insertInto(columns, table_name));
+        for (int i = 0; i < rows; i++) {
+            query.append(i == 0 ? " " : ", ").append(values);
+        }
+        return cache(key, query.toString());
+    }
+
+    /**
+     * Keep a generated statement, unless there are already too many.
+     */
+    private static String cache(String key, String query) {
+        if (TEMPLATES.size() < MAX_TEMPLATES) {
+            TEMPLATES.putIfAbsent(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * Generate the <b>INSERT INTO</b> part of the statement, up to VALUES.
+     */
+    private static String insertInto(List<String> columns, String table_name) {
         final StringBuilder query = new StringBuilder();
         query.append("INSERT INTO ").append(table_name).append(" (");
-
         for (int i = 0; i < columns.size(); i++) {
             if (i != columns.size() - 1) {
                 query.append(" ").append(columns.get(i)).append(", ");
@@ -160,15 +329,7 @@ public class SQLUtils {
                 query.append(" ").append(columns.get(i)).append(" ");
             }
         }
-        query.append(") VALUES (");
-        for (int i = 0; i < columns.size(); i++) {
-            if (i != columns.size() - 1) {
-                query.append(" ?, ");
-            } else {
-                query.append(" ? ");
-            }
-        }
-        query.append(")");
+        query.append(") VALUES");
         return query.toString();
     }
 
@@ -0,0 +1,368 @@
+package my.jutils.db;
+
+import java.lang.ref.*;
+import java.lang.reflect.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.slf4j.*;
+
+/**
+ * LRU cache of {@link PreparedStatement} for one connection.
+ * <p>
+ * Preparing the same SQL again returns the statement that was prepared
+ * before, so the driver can reuse its server-side plan (pgjdbc switches to a
+ * named server-side statement after {@code prepareThreshold} executions of the
+ * same statement). The returned statement is a wrapper, invoking
+ * {@code close()} on it clears its parameters, restores the max rows, fetch
+ * size, query timeout and fetch direction it was prepared with, and gives it
+ * back to the cache. A statement whose other settings were changed (eg.
+ * {@code setCursorName}) is closed instead.
+ * <br />
+ * A wrapper that is garbage collected without being closed is reported as a
+ * leak, and its statement is given back to the cache on the next
+ * {@code prepare}. Its result sets keep it reachable, and their
+ * {@code getStatement()} returns the wrapper, so a statement is not reused
+ * while one of its result sets may still be read.
+ * A cached statement that was closed anyway is prepared again.
+ * <br />
+ * If the SQL is already in use by another unclosed statement, a new
+ * statement is prepared which is really closed on {@code close()}. When the
+ * cache is full, the least recently used statement is closed.
+ * <br /><br />
+ * Note: <i>Connections of {@link ConnectionPool} already have their own
+ * cache, see {@code setStatementCacheSize}.</i> <br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final StatementCache cache = new StatementCache(conn, 50); <br />
+ * try (PreparedStatement stmt = cache.prepare(SQLUtils.findById("product"))) { <br />
+ * <blockquote>
+ * stmt.setObject(1, id); <br />
+ * // Read the ResultSet here <br />
+ * </blockquote>
+ * }
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class StatementCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementCache.class.getSimpleName());
+
+    private final Connection conn;
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> statements;
+
+    /**
+     * Wrappers not closed yet, so that a leaked one is found by {@code leaks}.
+     */
+    private final Set<Lease> leases = new HashSet<>();
+    private final ReferenceQueue<PreparedStatement> leaks = new ReferenceQueue<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create new cache.
+     *
+     * @param conn Connection where the statements are prepared, this will not
+     * be closed by the cache
+     * @param maxSize Maximum number of cached statements
+     */
+    public StatementCache(Connection conn, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("StatementCache -> [ERROR] maxSize must be greater than zero.");
+        }
+        this.conn = conn;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Cached statement.
+     */
+    private static class Entry {
+
+        private final String sql;
+        private final PreparedStatement raw;
+        private final int maxRows;
+        private final int fetchSize;
+        private final int queryTimeout;
+        private final int fetchDirection;
+        private boolean inUse;
+        private boolean evicted;
+        private volatile boolean modified;
+        private volatile boolean unrestorable;
+
+        Entry(String sql, PreparedStatement raw) throws SQLException {
+            this.sql = sql;
+            this.raw = raw;
+            this.maxRows = raw.getMaxRows();
+            this.fetchSize = raw.getFetchSize();
+            this.queryTimeout = raw.getQueryTimeout();
+            this.fetchDirection = raw.getFetchDirection();
+        }
+    }
+
+    /**
+     * Borrowed wrapper of an entry.
+     */
+    private static class Lease extends WeakReference<PreparedStatement> {
+
+        private final Entry entry;
+        private final AtomicBoolean released;
+
+        Lease(PreparedStatement wrapper, Entry entry, AtomicBoolean released, ReferenceQueue<PreparedStatement> queue) {
+            super(wrapper, queue);
+            this.entry = entry;
+            this.released = released;
+        }
+    }
+
+    /**
+     * Get the cached statement of the given SQL, preparing it if it is not
+     * cached yet.
+     *
+     * @param sql SQL statement, usually with <i>?</i> placeholders
+     * @return Statement, close it after use to give it back to the cache
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, conn);
+    }
+
+    /**
+     * Same as {@code prepare(String)}, with the connection returned by
+     * {@code getConnection()} of the statement.
+     */
+    synchronized PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        reclaim();
+        Entry entry = statements.get(sql);
+        if (entry != null && !entry.inUse && entry.raw.isClosed()) {
+            LOGGER.debug("Cached statement was closed, preparing it again: {}", sql);
+            statements.remove(sql);
+            entry = null;
+        }
+        if (entry != null && !entry.inUse) {
+            hits.getAndIncrement();
+            entry.inUse = true;
+            return wrap(entry, owner);
+        }
+        misses.getAndIncrement();
+        final PreparedStatement raw = conn.prepareStatement(sql);
+        try {
+            if (entry != null) {
+                // Same SQL still in use, this one is not cached
+                return wrap(new Entry(sql, raw), owner);
+            }
+            entry = new Entry(sql, raw);
+        } catch (SQLException e) {
+            closeQuietly(raw);
+            throw e;
+        }
+        entry.inUse = true;
+        statements.put(sql, entry);
+        if (statements.size() > maxSize) {
+            final Iterator<Entry> it = statements.values().iterator();
+            final Entry eldest = it.next();
+            it.remove();
+            evictions.getAndIncrement();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                closeQuietly(eldest.raw);
+            }
+        }
+        return wrap(entry, owner);
+    }
+
+    private PreparedStatement wrap(final Entry entry, final Connection owner) {
+        final AtomicBoolean released = new AtomicBoolean();
+        final Lease[] lease = new Lease[1];
+        final PreparedStatement wrapper = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (released.compareAndSet(false, true)) {
+                            release(entry, lease[0]);
+                        }
+                        return null;
+                    case "setMaxRows":
+                    case "setFetchSize":
+                    case "setQueryTimeout":
+                    case "setFetchDirection":
+                        entry.modified = true;
+                        break;
+                    case "setMaxFieldSize":
+                    case "setEscapeProcessing":
+                    case "setCursorName":
+                    case "setPoolable":
+                    case "closeOnCompletion":
+                        entry.unrestorable = true;
+                        break;
+                    case "isClosed":
+                        return released.get() || entry.raw.isClosed();
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached[" + entry.sql + "]";
+                }
+                if (released.get()) {
+                    throw new SQLException("StatementCache -> [ERROR] Statement has been already closed.");
+                }
+                final Object result;
+                try {
+                    result = method.invoke(entry.raw, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                return result instanceof ResultSet ? wrap((ResultSet) result, (PreparedStatement) proxy) : result;
+            }
+        });
+        lease[0] = new Lease(wrapper, entry, released, leaks);
+        leases.add(lease[0]);
+        return wrapper;
+    }
+
+    /**
+     * Result set that holds the wrapper of its statement, so that the
+     * statement is not reclaimed while the result set is reachable.
+     */
+    private static ResultSet wrap(final ResultSet rs, final PreparedStatement wrapper) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getStatement":
+                        return wrapper;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                }
+                try {
+                    return method.invoke(rs, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+
+    /**
+     * Give back the statements of the wrappers that were garbage collected
+     * without being closed.
+     */
+    private void reclaim() {
+        Reference<? extends PreparedStatement> ref;
+        while ((ref = leaks.poll()) != null) {
+            final Lease lease = (Lease) ref;
+            if (leases.contains(lease) && lease.released.compareAndSet(false, true)) {
+                LOGGER.warn("Statement was not closed, giving it back to the cache: {}", lease.entry.sql);
+                release(lease.entry, lease);
+            }
+        }
+    }
+
+    private synchronized void release(Entry entry, Lease lease) {
+        leases.remove(lease);
+        entry.inUse = false;
+        if (entry.evicted || entry.unrestorable || statements.get(entry.sql) != entry) {
+            if (statements.get(entry.sql) == entry) {
+                statements.remove(entry.sql);
+            }
+            closeQuietly(entry.raw);
+            return;
+        }
+        try {
+            entry.raw.clearParameters();
+            entry.raw.clearBatch();
+            if (entry.modified) {
+                entry.raw.setMaxRows(entry.maxRows);
+                entry.raw.setFetchSize(entry.fetchSize);
+                entry.raw.setQueryTimeout(entry.queryTimeout);
+                entry.raw.setFetchDirection(entry.fetchDirection);
+                entry.modified = false;
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Cannot reset statement, discarding... Cause: {}", e.toString());
+            statements.remove(entry.sql);
+            closeQuietly(entry.raw);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close all cached statements.
+     * <p>
+     * Statements currently in use are closed when they are given back.
+     */
+    public synchronized void close() {
+        for (Entry entry : statements.values()) {
+            entry.evicted = true;
+            if (!entry.inUse) {
+                closeQuietly(entry.raw);
+            }
+        }
+        statements.clear();
+    }
+
+    /**
+     * Number of statements currently cached.
+     *
+     * @return Cached count
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Number of {@code prepare} served from the cache.
+     *
+     * @return Hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of {@code prepare} that prepared a new statement.
+     *
+     * @return Miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Number of statements closed to make room for another.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+}
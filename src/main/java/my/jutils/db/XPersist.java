@@ -2,12 +2,21 @@ package my.jutils.db;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.*;
 import javax.swing.JOptionPane;
 import javax.xml.parsers.*;
 import my.jutils.Strings;
+import my.jutils.services.BackgroundThreadFactory;
+import org.eclipse.persistence.config.*;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.*;
 import org.eclipse.persistence.exceptions.*;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.*;
+import org.eclipse.persistence.sessions.server.Server;
 import org.slf4j.*;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
@@ -30,6 +39,24 @@ import org.xml.sax.SAXException;
  * {@link XPersist#update(java.lang.Object)} to update update existing record.
  * Both methods uses the currently active {@code EntityManagerFactory} so
  * before invoking both methods, you must invoke the {@code open()}.
+ * For many entities, use {@link XPersist#createAll(java.util.Collection)} and
+ * {@link XPersist#updateAll(java.util.Collection)} which write in chunked
+ * transactions instead of one transaction per entity.
+ * To keep the calling thread (eg. Swing's EDT) responsive, use the
+ * {@code createAsync}, {@code updateAsync}, {@code findAsync} and
+ * {@code queryAsync} variants which return a {@link java.util.concurrent.Future}.
+ * To retry serialization failures, deadlocks and lost connections instead of
+ * returning false, run the work thru {@link RetryExecutor}.
+ * Service methods of several steps should share one EntityManager and
+ * transaction thru {@code inTransaction()}, which may be nested.
+ * Headless services should use {@code openAsync()}, which returns a
+ * {@link HealthMonitor} instead of testing the connection on the spot.
+ * Reference data may be kept in EclipseLink's shared cache thru
+ * {@code setEntityCache()} and {@code setQueryResultCache()}.
+ * Large results may be read lazily with {@code stream()} instead of
+ * {@code getResultList()}.
+ * To talk to several databases at the same time, use {@link XPersistUnit}
+ * instead, which keeps one factory per persistence unit and server.
  * 
  * <br /><br />
  * Note: <i> You must close the {@code EntityManager} after using or after
@@ -74,6 +101,77 @@ public class XPersist {
      * Singleton instance of EntityManager.
      */
     private static EntityManager EM;
+    /**
+     * EntityManager bound to the current thread by {@code inTransaction()}.
+     */
+    private static final ThreadLocal<EntityManager> CURRENT = new ThreadLocal<>();
+
+    /**
+     * EclipseLink batch writing mode, used when the EntityManagerFactory is
+     * created.
+     */
+    private static String BATCH_WRITING = "JDBC";
+    /**
+     * Number of statements per JDBC batch.
+     */
+    private static int BATCH_SIZE = 100;
+
+    /**
+     * Default number of entities per transaction of {@code createAll} and
+     * {@code updateAll}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * EclipseLink's default maximum connections of the default pool.
+     */
+    private static final int DEFAULT_POOL_SIZE = 32;
+
+    /**
+     * Executor of the asynchronous operations, created on first use.
+     */
+    private static ThreadPoolExecutor ASYNC;
+
+    /**
+     * Parsed persistence.xml properties per classloader, parsed only once.
+     */
+    private static final Map<ClassLoader, PersistenceProps> PERSISTENCE_PROPS = Collections.synchronizedMap(new WeakHashMap<ClassLoader, PersistenceProps>());
+
+    /**
+     * Time spent by the last {@code open()} or {@code reopen()}.
+     */
+    private static volatile long FACTORY_MILLIS;
+
+    /**
+     * Shared cache settings per entity class.
+     */
+    private static final Map<Class<?>, CacheSettings> ENTITY_CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * Result cache settings per named query.
+     */
+    private static final Map<String, CacheSettings> QUERY_CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each cache setting change, so that open factories apply
+     * them again.
+     */
+    private static final AtomicInteger CACHE_VERSION = new AtomicInteger(1);
+
+    /**
+     * Cache settings version applied to {@code EMF}.
+     */
+    private static volatile int CACHE_APPLIED;
+
+    /**
+     * Register {@link QueryProfiler} when the EntityManagerFactory is created?
+     */
+    private static volatile boolean INSTRUMENTED;
+
+    /**
+     * Monitor started by {@code openAsync()}.
+     */
+    private static HealthMonitor MONITOR;
 
     private static final AtomicBoolean open = new AtomicBoolean();
 
@@ -121,6 +219,7 @@ public class XPersist {
         LOGGING = logging;
         LOGGER.info("XPersist verification running...");
 
+        final long start = System.nanoTime();
         if (XPersist.EMF == null || !XPersist.EMF.isOpen()) {
             XPersist.EMF = createEntityManagerFactory();
         } else if (XPersist.EMF.isOpen()) {
@@ -128,6 +227,7 @@ public class XPersist {
             XPersist.EMF = createEntityManagerFactory();
         }
         if (test()) {
+            recordFactoryTime(start);
             open.set(true);
             return true;
         } else {
@@ -136,6 +236,114 @@ public class XPersist {
         }
     }
 
+    /**
+     * Create new Entity Manager Factory without waiting for the database.
+     * <p>
+     * Unlike {@code open()}, the connection is not tested here. This returns
+     * immediately with a started {@link HealthMonitor}, which probes the
+     * database in the background, and never shows a dialog nor exits the JVM.
+     * This is meant for headless services, whose startup should not be gated
+     * on a slow database.
+     * <br />
+     * Note: <i>The monitor of the previous {@code openAsync()} is stopped.</i>
+     *
+     * @param pu Persistence unit used for this project
+     * @param server IP address of the server.
+     * @param logging Eclipselink level of logging
+     * @return Started monitor of the new EntityManagerFactory
+     */
+    public static synchronized HealthMonitor openAsync(String pu, String server, String logging) {
+        PU = pu;
+        SERVER = server;
+        LOGGING = logging;
+        if (XPersist.EMF != null && XPersist.EMF.isOpen()) {
+            XPersist.EMF.close();
+        }
+        XPersist.EMF = createEntityManagerFactory();
+        open.set(true);
+        if (MONITOR != null) {
+            MONITOR.stop();
+        }
+        MONITOR = HealthMonitor.forXPersist();
+        MONITOR.start();
+        return MONITOR;
+    }
+
+    /**
+     * Monitor started by the last {@code openAsync()}.
+     *
+     * @return Monitor, null if {@code openAsync()} was not invoked
+     */
+    public static synchronized HealthMonitor getHealthMonitor() {
+        return MONITOR;
+    }
+
+    /**
+     * Switch the currently open EntityManagerFactory to another server.
+     * <p>
+     * This reuses the persistence unit and logging level given to
+     * {@code open()} and the already parsed <b>persistence.xml</b>, only the
+     * host of the URL is swapped. The new factory is created and tested
+     * before it replaces the current one, so other threads can keep using the
+     * current one in the meantime. If the new server cannot be reached, the
+     * current factory is kept. Nothing is done if the server is the same.
+     *
+     * @param server IP address of the server.
+     * @return True if EntityManagerFactory has been created successfully and
+     * connection has been tested successfully, otherwise false
+     * @see XPersist#open(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public static synchronized boolean reopen(String server) {
+        if (PU == null) {
+            throw new IllegalStateException("XPersist -> [ERROR] XPersist has not been opened yet. Did you invoke XPersist.open()?");
+        }
+        final EntityManagerFactory current = XPersist.EMF;
+        if (server.equals(SERVER) && current != null && current.isOpen()) {
+            return true;
+        }
+        LOGGER.info("XPersist switching server from {} to {}...", SERVER, server);
+        final long start = System.nanoTime();
+        EntityManagerFactory created = null;
+        try {
+            // Tested here instead of test(), which exits the JVM on failure
+            created = Persistence.createEntityManagerFactory(PU, getProperties(server, LOGGING));
+            created.createEntityManager().close();
+        } catch (Exception e) {
+            LOGGER.error("Cannot switch to {}, keeping {}. Cause: {}", server, SERVER, e.toString(), e);
+            if (created != null && created.isOpen()) {
+                created.close();
+            }
+            return false;
+        }
+        CACHE_APPLIED = 0;
+        XPersist.EMF = created;
+        SERVER = server;
+        recordFactoryTime(start);
+        if (current != null && current.isOpen()) {
+            current.close();
+        }
+        open.set(true);
+        return true;
+    }
+
+    private static void recordFactoryTime(long start) {
+        FACTORY_MILLIS = (System.nanoTime() - start) / 1000000;
+        LOGGER.info("EntityManagerFactory for {} ready in {} ms", SERVER, FACTORY_MILLIS);
+    }
+
+    /**
+     * Time spent by the last successful {@code open()} or {@code reopen()}.
+     * <p>
+     * This includes creating the EntityManagerFactory and the first
+     * EntityManager, which is when EclipseLink deploys the persistence unit
+     * and logs in to the database.
+     *
+     * @return Elapsed time in millis
+     */
+    public static long getFactoryCreationMillis() {
+        return FACTORY_MILLIS;
+    }
+
     /**
      * Close current EntityManagerFactory explicitly.
      */
@@ -190,12 +398,16 @@ public class XPersist {
      * @see XPersist
      */
     public static EntityManagerFactory createEntityManagerFactory() {
+        CACHE_APPLIED = 0;
         return Persistence.createEntityManagerFactory(PU, getProperties());
     }
 
     /**
      * Create new EntityManager from the current EntityManagerFactory. This
      * EntityManager have to be closed explicity.
+     * <p>
+     * This is always a new persistence context and connection, even within
+     * {@code inTransaction()}, use {@code currentManager()} to join it.
      *
      * @return New EntityManager
      */
@@ -207,7 +419,11 @@ public class XPersist {
              }
              XPersist.EM = XPersist.EMF.createEntityManager();
              return XPersist.EM;*/
-            return XPersist.EMF.createEntityManager();
+            final EntityManager em = XPersist.EMF.createEntityManager();
+            if (CACHE_APPLIED != CACHE_VERSION.get()) {
+                CACHE_APPLIED = applyCacheSettings(XPersist.EMF);
+            }
+            return em;
         } else {
             LOGGER.warn("EntityManagerFactory is already closed! Did you verify XPersist?");
             throw new IllegalStateException("XPersist -> [ERROR] EntityManagerFactory is close.");
@@ -251,15 +467,61 @@ public class XPersist {
      * @return Properties of the EntiyManager
      */
     private static Map<String, String> getProperties() {
-        final Map<String, String> properties = getPersistenceProp();
-        final String dbURL = properties.get("javax.persistence.jdbc.url");
-        properties.put("javax.persistence.jdbc.url", dbURL.replaceFirst(Strings.extractIPv4(dbURL), SERVER));
+        return getProperties(SERVER, LOGGING);
+    }
+
+    /**
+     * Properties of the EntityManagerFactory for the given server.
+     * <p>
+     * Also used by {@link XPersistUnit} so that each unit shares the parsed
+     * <b>persistence.xml</b>.
+     */
+    static Map<String, String> getProperties(String server, String logging) {
+        final PersistenceProps cached = getCachedProp();
+        final Map<String, String> properties = new HashMap<>(cached.props);
+        if (cached.urlPrefix != null) {
+            properties.put("javax.persistence.jdbc.url", cached.urlPrefix + server + cached.urlSuffix);
+        }
+
+        /**
+         * * Batch writing, unless configured from persistence.xml. **
+         */
+        if (BATCH_WRITING != null && !properties.containsKey("eclipselink.jdbc.batch-writing")) {
+            properties.put("eclipselink.jdbc.batch-writing", BATCH_WRITING);
+            properties.put("eclipselink.jdbc.batch-writing.size", String.valueOf(BATCH_SIZE));
+        }
+
+        /**
+         * * Shared cache per entity, unless configured from persistence.xml. **
+         */
+        for (Map.Entry<Class<?>, CacheSettings> entry : ENTITY_CACHES.entrySet()) {
+            final String entity = entry.getKey().getName();
+            if (!properties.containsKey(PersistenceUnitProperties.CACHE_TYPE_ + entity)) {
+                properties.put(PersistenceUnitProperties.CACHE_TYPE_ + entity, entry.getValue().type);
+                properties.put(PersistenceUnitProperties.CACHE_SIZE_ + entity, String.valueOf(entry.getValue().size));
+            }
+        }
+
+        /**
+         * * Query instrumentation, unless a listener is set from persistence.xml. **
+         */
+        if (INSTRUMENTED) {
+            final String listener = properties.get(PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS);
+            if (listener == null) {
+                properties.put(PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS, QueryProfiler.class.getName());
+            } else if (!listener.equals(QueryProfiler.class.getName())) {
+                LOGGER.warn("Query instrumentation is disabled, {} is already set to {}", PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS, listener);
+            }
+            if (!properties.containsKey(PersistenceUnitProperties.EXCEPTION_HANDLER_CLASS)) {
+                properties.put(PersistenceUnitProperties.EXCEPTION_HANDLER_CLASS, QueryProfiler.class.getName());
+            }
+        }
 
         /**
          * * Optional properties for logging. **
          */
-        if (LOGGING != null && !LOGGING.isEmpty()) {
-            properties.put("eclipselink.logging.level", LOGGING);
+        if (logging != null && !logging.isEmpty()) {
+            properties.put("eclipselink.logging.level", logging);
             properties.put("eclipselink.logging.timestamp", "true");
             properties.put("eclipselink.logging.session", "true");
         }
@@ -279,12 +541,33 @@ public class XPersist {
      * @return Map of the persistence properties
      */
     public static Map<String, String> getPersistenceProp() {
-        final Map<String, String> prop = new HashMap<>();
+        return new HashMap<>(getCachedProp().props);
+    }
+
+    /**
+     * Get the parsed <b>persistence.xml</b> of the current classloader,
+     * parsing it on first use.
+     */
+    private static PersistenceProps getCachedProp() {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        PersistenceProps cached = PERSISTENCE_PROPS.get(loader);
+        if (cached == null) {
+            final Map<String, String> prop = new HashMap<>();
+            if (parsePersistenceProp(loader, prop)) {
+                cached = new PersistenceProps(prop);
+                PERSISTENCE_PROPS.put(loader, cached);
+            } else {
+                // Not cached, so it will be parsed again on the next attempt
+                return new PersistenceProps(prop);
+            }
+        }
+        return cached;
+    }
+
+    private static boolean parsePersistenceProp(ClassLoader loader, Map<String, String> prop) {
         try {
             final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().
-                    parse(Thread.currentThread().
-                            getContextClassLoader().
-                            getResource("META-INF/persistence.xml").openStream());
+                    parse(loader.getResource("META-INF/persistence.xml").openStream());
             doc.getDocumentElement().normalize();
             LOGGER.debug("Root element: {}", doc.getDocumentElement().getNodeName());
             Element elem = (Element) doc.getElementsByTagName("properties").item(0);
@@ -296,10 +579,31 @@ public class XPersist {
                     LOGGER.debug("value={}", elem.getAttribute("value"));
                 }
             }
-            return prop;
+            return true;
         } catch (ParserConfigurationException | IOException | SAXException e) {
             LOGGER.error(e.getMessage(), e);
-            return prop;
+            return false;
+        }
+    }
+
+    /**
+     * Immutable properties of <b>persistence.xml</b>, with the URL split
+     * around its host so switching server does not need to search the URL
+     * again.
+     */
+    private static class PersistenceProps {
+
+        private final Map<String, String> props;
+        private final String urlPrefix;
+        private final String urlSuffix;
+
+        PersistenceProps(Map<String, String> props) {
+            this.props = Collections.unmodifiableMap(new HashMap<>(props));
+            final String url = props.get("javax.persistence.jdbc.url");
+            final String host = url == null ? null : Strings.extractIPv4(url);
+            final int index = host == null ? -1 : url.indexOf(host);
+            this.urlPrefix = index == -1 ? null : url.substring(0, index);
+            this.urlSuffix = index == -1 ? null : url.substring(index + host.length());
         }
     }
 
@@ -329,8 +633,12 @@ public class XPersist {
      * @param entity Instance of an Entity class that contains the fields values
      * which will be used in creating new record
      * @return True if record created successfully, otherwise false
+     * @see XPersist#inTransaction(my.jutils.db.RetryExecutor.UnitOfWork)
      */
     public static boolean create(Object entity) {
+        if (CURRENT.get() != null) {
+            return join(entity, false);
+        }
         final EntityManager em = XPersist.createManager();
         final AtomicBoolean result = new AtomicBoolean();
         try {
@@ -359,8 +667,12 @@ public class XPersist {
      * @param entity Instance of an Entity Class that contains the updated
      * fields
      * @return True if given entity updated successfully, otherwise false
+     * @see XPersist#inTransaction(my.jutils.db.RetryExecutor.UnitOfWork)
      */
     public static boolean update(Object entity) {
+        if (CURRENT.get() != null) {
+            return join(entity, true);
+        }
         final EntityManager em = XPersist.createManager();
         final AtomicBoolean result = new AtomicBoolean();
         try {
@@ -380,4 +692,841 @@ public class XPersist {
         return result.get();
     }
 
+    /**
+     * Persist or merge on the EntityManager of {@code inTransaction()}, the
+     * change is written when the outermost call commits.
+     */
+    private static boolean join(Object entity, boolean merge) {
+        try {
+            if (merge) {
+                CURRENT.get().merge(entity);
+            } else {
+                CURRENT.get().persist(entity);
+            }
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Run a unit of work in a transaction, on an EntityManager bound to the
+     * current thread.
+     * <p>
+     * The outermost call creates the EntityManager, begins the transaction
+     * and commits it when the work returns, then closes the EntityManager.
+     * Nested calls on the same thread, directly or thru the methods invoked by
+     * the work, join the same EntityManager and transaction, so entities are
+     * loaded once and only one connection is checked out. The flush mode is
+     * {@code COMMIT}, so the changes are written once when the outermost call
+     * commits instead of before every query.
+     * <br />
+     * If the work throws, the transaction is marked for rollback, even if a
+     * nested failure is caught by the enclosing work, and the outermost call
+     * rolls it back. Checked exceptions are wrapped in
+     * {@code PersistenceException}.
+     * <br />
+     * {@code create()}, {@code update()} and {@code namedQuery()} invoked by
+     * the work join the bound EntityManager too, {@code create()} and
+     * {@code update()} then return true once the entity is persisted or
+     * merged, a constraint violation is only thrown on commit. The other
+     * helpers do not take part in the unit of work: {@code createManager()},
+     * {@code stream()}, {@code createAll()}, {@code updateAll()} and the
+     * asynchronous variants use their own EntityManager and transaction.
+     * <br /><br />
+     * Here's a snippet on how to use it: <br />
+     * <table>
+     * <tr> <td>
+     * final Order order = XPersist.inTransaction(new RetryExecutor.UnitOfWork&lt;Order&gt;() { <br />
+     * <blockquote>
+     * public Order run(EntityManager em) { <br />
+     * <blockquote>
+     * final Order o = em.find(Order.class, id); <br />
+     * reserveStock(o); // May call XPersist.inTransaction() as well <br />
+     * o.setStatus("RESERVED"); <br />
+     * return o; <br />
+     * </blockquote>
+     * } <br />
+     * </blockquote>
+     * });
+     * </td> </tr>
+     * </table>
+     *
+     * @param <T> Type of the result
+     * @param work Unit of work, it must not close the EntityManager
+     * @return Result of the work
+     * @see XPersist#currentManager()
+     */
+    public static <T> T inTransaction(RetryExecutor.UnitOfWork<T> work) {
+        final EntityManager current = CURRENT.get();
+        if (current != null) {
+            try {
+                return work.run(current);
+            } catch (Exception e) {
+                if (current.getTransaction().isActive()) {
+                    current.getTransaction().setRollbackOnly();
+                }
+                throw e instanceof RuntimeException ? (RuntimeException) e : new PersistenceException(e);
+            }
+        }
+        final EntityManager em = XPersist.createManager();
+        CURRENT.set(em);
+        try {
+            em.setFlushMode(FlushModeType.COMMIT);
+            em.getTransaction().begin();
+            final T result = work.run(em);
+            if (em.getTransaction().getRollbackOnly()) {
+                throw new RollbackException("XPersist -> [ERROR] Transaction was marked for rollback by a nested unit of work.");
+            }
+            em.getTransaction().commit();
+            return result;
+        } catch (Exception e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new PersistenceException(e);
+        } finally {
+            CURRENT.remove();
+            em.close();
+        }
+    }
+
+    /**
+     * EntityManager of the {@code inTransaction()} running on the current
+     * thread.
+     * <p>
+     * Do not close it, it is closed by the outermost {@code inTransaction()}.
+     *
+     * @return Bound EntityManager, null if there is none
+     */
+    public static EntityManager currentManager() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Receives the outcome of an asynchronous operation.
+     * <p>
+     * Methods are invoked from the XPersist worker thread, use
+     * {@code SwingUtilities.invokeLater} when updating Swing components.
+     *
+     * @param <T> Type of the result
+     */
+    public static interface Callback<T> {
+
+        /**
+         * Invoked when the operation completed successfully.
+         *
+         * @param result Result of the operation
+         */
+        public void done(T result);
+
+        /**
+         * Invoked when the operation failed.
+         *
+         * @param cause The exception thrown by the operation
+         */
+        public void failed(Throwable cause);
+
+    }
+
+    /**
+     * Create new record asynchronously.
+     * <p>
+     * Unlike {@code create()}, a failure is not swallowed, it is thrown by
+     * {@link Future#get()} as the cause of the {@code ExecutionException}.
+     *
+     * @param <T> Type of the Entity class
+     * @param entity Instance of an Entity class
+     * @return The persisted entity
+     */
+    public static <T> Future<T> createAsync(T entity) {
+        return createAsync(entity, null);
+    }
+
+    /**
+     * Create new record asynchronously.
+     *
+     * @param <T> Type of the Entity class
+     * @param entity Instance of an Entity class
+     * @param callback Notified on completion, may be null
+     * @return The persisted entity
+     * @see XPersist#createAsync(java.lang.Object)
+     */
+    public static <T> Future<T> createAsync(final T entity, Callback<? super T> callback) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return write(entity, false);
+            }
+        }, callback);
+    }
+
+    /**
+     * Update record asynchronously.
+     * <p>
+     * Unlike {@code update()}, a failure is not swallowed, it is thrown by
+     * {@link Future#get()} as the cause of the {@code ExecutionException}.
+     *
+     * @param <T> Type of the Entity class
+     * @param entity Instance of an Entity class
+     * @return The merged entity
+     */
+    public static <T> Future<T> updateAsync(T entity) {
+        return updateAsync(entity, null);
+    }
+
+    /**
+     * Update record asynchronously.
+     *
+     * @param <T> Type of the Entity class
+     * @param entity Instance of an Entity class
+     * @param callback Notified on completion, may be null
+     * @return The merged entity
+     * @see XPersist#updateAsync(java.lang.Object)
+     */
+    public static <T> Future<T> updateAsync(final T entity, Callback<? super T> callback) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return write(entity, true);
+            }
+        }, callback);
+    }
+
+    /**
+     * Find a record by primary key asynchronously.
+     *
+     * @param <T> Type of the Entity class
+     * @param entityClass Entity class
+     * @param id Primary key
+     * @return The found entity, null if it does not exists
+     */
+    public static <T> Future<T> findAsync(Class<T> entityClass, Object id) {
+        return findAsync(entityClass, id, null);
+    }
+
+    /**
+     * Find a record by primary key asynchronously.
+     *
+     * @param <T> Type of the Entity class
+     * @param entityClass Entity class
+     * @param id Primary key
+     * @param callback Notified on completion, may be null
+     * @return The found entity, null if it does not exists
+     */
+    public static <T> Future<T> findAsync(final Class<T> entityClass, final Object id, Callback<? super T> callback) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                final EntityManager em = XPersist.createManager();
+                try {
+                    return em.find(entityClass, id);
+                } finally {
+                    em.close();
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Execute a JPQL query asynchronously.
+     * <p>
+     * Parameters are bound by position, starting from <i>?1</i>.
+     *
+     * @param <T> Type of the result
+     * @param jpql JPQL query
+     * @param resultClass Type of the result
+     * @param params Positional parameters
+     * @return Result list
+     */
+    public static <T> Future<List<T>> queryAsync(String jpql, Class<T> resultClass, Object... params) {
+        return queryAsync(jpql, resultClass, null, params);
+    }
+
+    /**
+     * Execute a JPQL query asynchronously.
+     * <p>
+     * Parameters are bound by position, starting from <i>?1</i>.
+     *
+     * @param <T> Type of the result
+     * @param jpql JPQL query
+     * @param resultClass Type of the result
+     * @param callback Notified on completion, may be null
+     * @param params Positional parameters
+     * @return Result list
+     */
+    public static <T> Future<List<T>> queryAsync(final String jpql, final Class<T> resultClass, Callback<? super List<T>> callback, final Object... params) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                final EntityManager em = XPersist.createManager();
+                try {
+                    final TypedQuery<T> query = em.createQuery(jpql, resultClass);
+                    for (int i = 0; i < params.length; i++) {
+                        query.setParameter(i + 1, params[i]);
+                    }
+                    return query.getResultList();
+                } finally {
+                    em.close();
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Persist or merge in its own transaction, rethrowing any failure.
+     */
+    private static <T> T write(T entity, boolean merge) {
+        final EntityManager em = XPersist.createManager();
+        try {
+            em.getTransaction().begin();
+            final T result;
+            if (merge) {
+                result = em.merge(entity);
+            } else {
+                em.persist(entity);
+                result = entity;
+            }
+            em.getTransaction().commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    private static <T> Future<T> submit(Callable<T> task, final Callback<? super T> callback) {
+        final FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                if (callback == null || isCancelled()) {
+                    return;
+                }
+                try {
+                    callback.done(get());
+                } catch (ExecutionException e) {
+                    LOGGER.error("Cause: {}", e.getCause().toString(), e.getCause());
+                    callback.failed(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        asyncExecutor().execute(future);
+        return future;
+    }
+
+    /**
+     * Executor of the asynchronous operations.
+     * <p>
+     * Threads are capped to the maximum connections of EclipseLink's default
+     * pool, since a thread waiting for a connection will not run any faster.
+     */
+    private static synchronized ThreadPoolExecutor asyncExecutor() {
+        if (ASYNC == null || ASYNC.isShutdown()) {
+            int size = DEFAULT_POOL_SIZE;
+            if (XPersist.isOpen()) {
+                final Object max = XPersist.EMF.getProperties().get("eclipselink.connection-pool.default.max");
+                if (max != null) {
+                    size = Math.max(1, Integer.parseInt(max.toString().trim()));
+                }
+            }
+            ASYNC = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new BackgroundThreadFactory(XPersist.class.getSimpleName() + "-Async"));
+            ASYNC.allowCoreThreadTimeOut(true);
+            LOGGER.debug("XPersist async executor created with {} threads", size);
+        }
+        return ASYNC;
+    }
+
+    /**
+     * Read a JPQL query result lazily thru a server-side cursor.
+     * <p>
+     * Rows are fetched {@code fetchSize} at a time instead of materializing
+     * the whole result list, and the persistence context is cleared every
+     * {@code fetchSize} rows, so memory stays flat even for millions of rows.
+     * Results are read-only, changes to them are not tracked.
+     * Parameters are bound by position, starting from <i>?1</i>.
+     * <br />
+     * The statement is forward-only and read-only, with auto-commit off,
+     * since the PostgreSQL driver reads the whole result at once for any
+     * other statement and ignores the fetch size. Setting the driver logger
+     * <i>org.postgresql</i> to <i>FINEST</i> shows one <i>FE=&gt; Execute</i>
+     * with a row limit of {@code fetchSize} per round trip.
+     * <br /><br />
+     * Note: <i>The cursor holds a connection and a transaction until it is
+     * closed, use it in a try-with-resources.</i> <br />
+     * Here's a snippet on how to do so: <br />
+     * <table>
+     * <tr> <td>
+     * try (XPersist.Cursor&lt;Product&gt; cursor = XPersist.stream("SELECT p FROM Product p", Product.class, 1000)) { <br />
+     * <blockquote>
+     * while (cursor.hasNext()) { export(cursor.next()); } <br />
+     * </blockquote>
+     * }
+     * </td> </tr>
+     * </table>
+     *
+     * @param <T> Type of the result
+     * @param jpql JPQL query
+     * @param resultClass Type of the result
+     * @param fetchSize Rows per round trip
+     * @param params Positional parameters
+     * @return Open cursor
+     */
+    public static <T> Cursor<T> stream(String jpql, Class<T> resultClass, int fetchSize, Object... params) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("XPersist -> [ERROR] fetchSize must be greater than zero.");
+        }
+        return stream(XPersist.createManager(), jpql, resultClass, fetchSize, params);
+    }
+
+    /**
+     * Same as {@code stream()}, on the given EntityManager which is closed
+     * together with the cursor.
+     */
+    static <T> Cursor<T> stream(EntityManager em, String jpql, Class<T> resultClass, int fetchSize, Object... params) {
+        try {
+            // Postgres only honors the fetch size with auto-commit off, so the
+            // transaction connection is acquired before the query runs
+            em.getTransaction().begin();
+            em.unwrap(java.sql.Connection.class);
+            // The scrollable cursor defaults to scroll-insensitive and
+            // updatable, which Postgres reads into memory in one go
+            final Query query = em.createQuery(jpql, resultClass)
+                    .setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE)
+                    .setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly)
+                    .setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly)
+                    .setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize)
+                    .setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+            for (int i = 0; i < params.length; i++) {
+                query.setParameter(i + 1, params[i]);
+            }
+            return new Cursor<>(em, (ScrollableCursor) query.getSingleResult(), resultClass, fetchSize);
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lazily populated result of {@code stream()}.
+     * <p>
+     * Closing the cursor releases the cursor, its transaction and its
+     * EntityManager.
+     *
+     * @param <T> Type of the result
+     */
+    public static class Cursor<T> implements Iterator<T>, AutoCloseable {
+
+        private final EntityManager em;
+        private final ScrollableCursor cursor;
+        private final Class<T> resultClass;
+        private final int clearEvery;
+        private long count;
+        private boolean closed;
+
+        private Cursor(EntityManager em, ScrollableCursor cursor, Class<T> resultClass, int clearEvery) {
+            this.em = em;
+            this.cursor = cursor;
+            this.resultClass = resultClass;
+            this.clearEvery = clearEvery;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (!cursor.hasNext()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T next = resultClass.cast(cursor.next());
+            if (++count % clearEvery == 0) {
+                em.clear();
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("XPersist -> [ERROR] Cursor is read-only.");
+        }
+
+        /**
+         * Number of rows read so far.
+         *
+         * @return Row count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                cursor.close();
+            } catch (RuntimeException e) {
+                LOGGER.error("Cause: {}", e.toString(), e);
+            }
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+            LOGGER.debug("Cursor closed after {} rows", count);
+        }
+    }
+
+    /**
+     * Configure the shared (L2) cache of an entity.
+     * <p>
+     * Type and size must be set before {@code open()} since they only take
+     * effect when the EntityManagerFactory is created, while the expiry also
+     * applies to the open factory. Settings from <b>persistence.xml</b> take
+     * precedence over type and size.
+     * <br />
+     * To invalidate the cache when another process changes the data, see
+     * {@link CacheInvalidator}.
+     *
+     * @param entityClass Entity class
+     * @param type Cache type from {@link CacheType}, such as
+     * {@code CacheType.Soft}, {@code CacheType.Weak} or {@code CacheType.Full}
+     * @param size Initial size, or maximum size for the Soft/Hard caches
+     * @param expiryMillis Time to live of a cached entity in millis, zero (0)
+     * to never expire
+     */
+    public static void setEntityCache(Class<?> entityClass, String type, int size, long expiryMillis) {
+        ENTITY_CACHES.put(entityClass, new CacheSettings(type, size, expiryMillis));
+        CACHE_VERSION.getAndIncrement();
+    }
+
+    /**
+     * Cache the results of a named query.
+     * <p>
+     * Results are cached per parameter values, so running the same query with
+     * the same parameters again does not hit the database until the results
+     * expire or the entity cache is invalidated. Use
+     * {@code namedQuery()} to run it.
+     *
+     * @param namedQuery Name of the named query
+     * @param size Maximum number of cached parameter combinations
+     * @param expiryMillis Time to live of cached results in millis, zero (0)
+     * to never expire
+     */
+    public static void setQueryResultCache(String namedQuery, int size, long expiryMillis) {
+        QUERY_CACHES.put(namedQuery, new CacheSettings(null, size, expiryMillis));
+        CACHE_VERSION.getAndIncrement();
+    }
+
+    /**
+     * Execute a named query.
+     * <p>
+     * Parameters are bound by position, starting from <i>?1</i>. If
+     * {@code setQueryResultCache()} was configured for this query, repeated
+     * executions are served from the result cache. Within
+     * {@code inTransaction()}, the query runs on its EntityManager.
+     *
+     * @param <T> Type of the result
+     * @param name Name of the named query
+     * @param resultClass Type of the result
+     * @param params Positional parameters
+     * @return Result list
+     */
+    public static <T> List<T> namedQuery(String name, Class<T> resultClass, Object... params) {
+        final EntityManager current = CURRENT.get();
+        final EntityManager em = current != null ? current : XPersist.createManager();
+        try {
+            final TypedQuery<T> query = em.createNamedQuery(name, resultClass);
+            for (int i = 0; i < params.length; i++) {
+                query.setParameter(i + 1, params[i]);
+            }
+            return query.getResultList();
+        } finally {
+            if (em != current) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Remove an entity from the shared cache.
+     *
+     * @param entityClass Entity class
+     * @param id Primary key, null to remove every entity of the class
+     */
+    public static void evictCache(Class<?> entityClass, Object id) {
+        if (XPersist.EMF != null && XPersist.EMF.isOpen()) {
+            if (id == null) {
+                XPersist.EMF.getCache().evict(entityClass);
+            } else {
+                XPersist.EMF.getCache().evict(entityClass, id);
+            }
+        }
+    }
+
+    /**
+     * Version of the cache settings, see {@code applyCacheSettings}.
+     */
+    static int getCacheVersion() {
+        return CACHE_VERSION.get();
+    }
+
+    /**
+     * Apply the entity expiry and the query result caches to a factory that
+     * already logged in.
+     *
+     * @return Version of the applied settings
+     */
+    static synchronized int applyCacheSettings(EntityManagerFactory emf) {
+        final int version = CACHE_VERSION.get();
+        final Server session = JpaHelper.getServerSession(emf);
+        for (Map.Entry<Class<?>, CacheSettings> entry : ENTITY_CACHES.entrySet()) {
+            final ClassDescriptor descriptor = session.getDescriptor(entry.getKey());
+            if (descriptor == null) {
+                LOGGER.warn("{} is not an entity of this persistence unit.", entry.getKey().getName());
+            } else {
+                descriptor.setCacheInvalidationPolicy(entry.getValue().policy());
+            }
+        }
+        for (Map.Entry<String, CacheSettings> entry : QUERY_CACHES.entrySet()) {
+            final DatabaseQuery query = session.getQuery(entry.getKey());
+            if (query instanceof ReadQuery) {
+                ((ReadQuery) query).setQueryResultsCachePolicy(new QueryResultsCachePolicy(entry.getValue().policy(), entry.getValue().size));
+            } else {
+                LOGGER.warn("{} is not a named read query of this persistence unit.", entry.getKey());
+            }
+        }
+        LOGGER.debug("Cache settings applied: {} entities, {} queries", ENTITY_CACHES.size(), QUERY_CACHES.size());
+        return version;
+    }
+
+    /**
+     * Cache settings of an entity or a named query.
+     */
+    private static class CacheSettings {
+
+        private final String type;
+        private final int size;
+        private final long expiryMillis;
+
+        CacheSettings(String type, int size, long expiryMillis) {
+            this.type = type;
+            this.size = size;
+            this.expiryMillis = expiryMillis;
+        }
+
+        CacheInvalidationPolicy policy() {
+            return expiryMillis > 0 ? new TimeToLiveCacheInvalidationPolicy(expiryMillis) : new NoExpiryCacheInvalidationPolicy();
+        }
+    }
+
+    /**
+     * Configure EclipseLink batch writing.
+     * <p>
+     * This must be invoked before {@code open()} since it only takes effect
+     * when the EntityManagerFactory is created. Settings from
+     * <b>persistence.xml</b> take precedence.
+     *
+     * @param mode Batch writing mode, such as "JDBC" or "Oracle-JDBC", null
+     * to disable
+     * @param size Number of statements per batch
+     */
+    public static void setBatchWriting(String mode, int size) {
+        BATCH_WRITING = mode;
+        BATCH_SIZE = size;
+    }
+
+    /**
+     * Record the latency and rows of every query to {@link QueryMetrics}.
+     * <p>
+     * This must be invoked before {@code open()} since it only takes effect
+     * when the EntityManagerFactory is created. It also applies to the
+     * factories of {@link XPersistUnit}.
+     *
+     * @param instrumented Register {@link QueryProfiler}?
+     */
+    public static void setInstrumented(boolean instrumented) {
+        INSTRUMENTED = instrumented;
+    }
+
+    /**
+     * Create new records for all the given entities.
+     *
+     * @param entities Instances of Entity classes
+     * @return Outcome of each chunk
+     * @see XPersist#createAll(java.util.Collection, int)
+     */
+    public static List<ChunkResult> createAll(Collection<?> entities) {
+        return createAll(entities, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create new records for all the given entities.
+     * <p>
+     * Entities are persisted in chunks of {@code chunkSize}, one transaction
+     * per chunk, using a single EntityManager which is cleared after every
+     * chunk to keep memory flat. A failed chunk is rolled back and the next
+     * chunks are still processed.
+     *
+     * @param entities Instances of Entity classes
+     * @param chunkSize Number of entities per transaction
+     * @return Outcome of each chunk
+     */
+    public static List<ChunkResult> createAll(Collection<?> entities, int chunkSize) {
+        return writeAll(entities, chunkSize, false);
+    }
+
+    /**
+     * Update records for all the given entities.
+     *
+     * @param entities Instances of Entity classes
+     * @return Outcome of each chunk
+     * @see XPersist#updateAll(java.util.Collection, int)
+     */
+    public static List<ChunkResult> updateAll(Collection<?> entities) {
+        return updateAll(entities, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Update records for all the given entities.
+     * <p>
+     * Entities are merged in chunks of {@code chunkSize}, one transaction per
+     * chunk, using a single EntityManager which is cleared after every chunk
+     * to keep memory flat. A failed chunk is rolled back and the next chunks
+     * are still processed.
+     *
+     * @param entities Instances of Entity classes
+     * @param chunkSize Number of entities per transaction
+     * @return Outcome of each chunk
+     */
+    public static List<ChunkResult> updateAll(Collection<?> entities, int chunkSize) {
+        return writeAll(entities, chunkSize, true);
+    }
+
+    private static List<ChunkResult> writeAll(Collection<?> entities, int chunkSize, boolean merge) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("XPersist -> [ERROR] chunkSize must be greater than zero.");
+        }
+        final List<ChunkResult> results = new ArrayList<>();
+        final EntityManager em = XPersist.createManager();
+        try {
+            final Iterator<?> it = entities.iterator();
+            int index = 0;
+            while (it.hasNext()) {
+                final int from = index;
+                final EntityTransaction tx = em.getTransaction();
+                try {
+                    tx.begin();
+                    while (it.hasNext() && index - from < chunkSize) {
+                        final Object entity = it.next();
+                        index++;
+                        if (merge) {
+                            em.merge(entity);
+                        } else {
+                            em.persist(entity);
+                        }
+                    }
+                    tx.commit();
+                    results.add(new ChunkResult(from, index - from, null));
+                } catch (Exception e) {
+                    LOGGER.error("Chunk [{}-{}] failed. Cause: {}", from, index - 1, e.toString(), e);
+                    // Skip the rest of the failed chunk
+                    while (it.hasNext() && index - from < chunkSize) {
+                        it.next();
+                        index++;
+                    }
+                    if (tx.isActive()) {
+                        tx.rollback();
+                    }
+                    results.add(new ChunkResult(from, index - from, e));
+                }
+                em.clear();
+            }
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+        LOGGER.info("{} {} entities in {} chunks", merge ? "Updated" : "Created", entities.size(), results.size());
+        return results;
+    }
+
+    /**
+     * Outcome of a chunk written by {@code createAll} or {@code updateAll}.
+     */
+    public static class ChunkResult {
+
+        private final int from;
+        private final int size;
+        private final Exception error;
+
+        ChunkResult(int from, int size, Exception error) {
+            this.from = from;
+            this.size = size;
+            this.error = error;
+        }
+
+        /**
+         * Index of the first entity of this chunk.
+         *
+         * @return Index from the given collection
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * Number of entities in this chunk.
+         *
+         * @return Chunk size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Check if this chunk was committed.
+         *
+         * @return True if committed, otherwise false
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * Cause of the failure.
+         *
+         * @return Exception, null if committed
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "ChunkResult[from=" + from + ", size=" + size + ", success=" + isSuccess() + "]";
+        }
+    }
+
 }
@@ -0,0 +1,600 @@
+package my.jutils.db;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.*;
+import org.slf4j.*;
+
+/**
+ * EntityManagerFactory of one persistence unit on one server.
+ * <p>
+ * Unlike the static {@link XPersist}, many units may be open at the same time,
+ * so a single process can serve several databases (eg. one per branch)
+ * without closing and rebuilding its factory for every switch. Units are
+ * created lazily and kept in a registry keyed by (persistence unit, server),
+ * retrieve them with {@link XPersistUnit#get(java.lang.String, java.lang.String)}.
+ * <br />
+ * The registry holds at most {@code maxUnits} factories. When it is full, the
+ * least recently used unit is closed, and {@code evictIdle} closes the units
+ * not used for a while. A closed unit keeps its factory open until every
+ * EntityManager created from it is closed, so work in progress is not broken.
+ * <br />
+ * A factory is created outside of the registry lock, callers of other units
+ * are not blocked while a unit deploys.
+ * <br /><br />
+ * Note: <i>The parsed <b>persistence.xml</b>, batch writing and logging
+ * options are the same used by {@code XPersist}. A unit evicted from the
+ * registry passes {@code createManager()} on to the unit that replaces it,
+ * only a unit closed thru {@code close()} or {@code closeAll()} rejects
+ * it.</i> <br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final EntityManager em = XPersistUnit.get("MyPU", "192.168.1.20").createManager(); <br />
+ * // Some query here <br />
+ * em.close();
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class XPersistUnit {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XPersistUnit.class.getSimpleName());
+
+    /**
+     * Default maximum number of open units.
+     */
+    public static final int DEFAULT_MAX_UNITS = 16;
+
+    private static int MAX_UNITS = DEFAULT_MAX_UNITS;
+
+    /**
+     * Logging level of the units created from now on.
+     */
+    private static String LOGGING;
+
+    /**
+     * Open units, in access order.
+     */
+    private static final LinkedHashMap<String, XPersistUnit> UNITS = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Units being created, so concurrent callers of the same key wait for a
+     * single factory.
+     */
+    private static final Map<String, FutureTask<XPersistUnit>> CREATING = new HashMap<>();
+
+    private final String pu;
+    private final String server;
+    private final EntityManagerFactory emf;
+    private final long createdAt;
+    private final long creationMillis;
+    private final AtomicLong managers;
+    private final AtomicLong commits;
+    private final AtomicLong failures;
+
+    private volatile long lastUsed;
+    private volatile int cacheApplied;
+
+    /**
+     * EntityManagers not closed yet, guarded by this unit.
+     */
+    private int openManagers;
+    private boolean retired;
+    private boolean evicted;
+
+    private XPersistUnit(String pu, String server, String logging) {
+        final long start = System.nanoTime();
+        this.pu = pu;
+        this.server = server;
+        this.emf = Persistence.createEntityManagerFactory(pu, XPersist.getProperties(server, logging));
+        this.createdAt = System.currentTimeMillis();
+        this.creationMillis = (System.nanoTime() - start) / 1000000;
+        this.lastUsed = createdAt;
+        this.managers = new AtomicLong();
+        this.commits = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Get the unit of the given persistence unit and server, creating it if
+     * it is not open yet.
+     *
+     * @param pu Persistence Unit name
+     * @param server IP address of the server
+     * @return Open unit
+     * @throws PersistenceException If the factory cannot be created
+     */
+    public static XPersistUnit get(final String pu, final String server) {
+        final String key = key(pu, server);
+        final FutureTask<XPersistUnit> task;
+        boolean creator = false;
+        synchronized (UNITS) {
+            final XPersistUnit current = UNITS.get(key);
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            FutureTask<XPersistUnit> pending = CREATING.get(key);
+            if (pending == null) {
+                final String logging = LOGGING;
+                pending = new FutureTask<>(new Callable<XPersistUnit>() {
+                    @Override
+                    public XPersistUnit call() {
+                        return new XPersistUnit(pu, server, logging);
+                    }
+                });
+                CREATING.put(key, pending);
+                creator = true;
+            }
+            task = pending;
+        }
+        if (creator) {
+            task.run();
+            register(key, task);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("XPersistUnit -> [ERROR] Interrupted while creating " + key + ".", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PersistenceException("XPersistUnit -> [ERROR] Cannot create " + key + ".", e.getCause());
+        }
+    }
+
+    /**
+     * Put a created unit in the registry and close the least recently used
+     * units above the limit.
+     */
+    private static void register(String key, FutureTask<XPersistUnit> task) {
+        final List<XPersistUnit> evicted = new ArrayList<>();
+        synchronized (UNITS) {
+            CREATING.remove(key);
+            final XPersistUnit created;
+            try {
+                created = task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                // Reported to the callers by get()
+                return;
+            }
+            UNITS.put(key, created);
+            LOGGER.info("Created unit [host={}, pu={}] in {} ms", created.server, created.pu, created.creationMillis);
+            final Iterator<XPersistUnit> it = UNITS.values().iterator();
+            while (UNITS.size() - evicted.size() > MAX_UNITS && it.hasNext()) {
+                evicted.add(it.next());
+                it.remove();
+            }
+        }
+        for (XPersistUnit eldest : evicted) {
+            LOGGER.info("Registry is full, closing least recently used unit [host={}, pu={}]", eldest.server, eldest.pu);
+            eldest.close(true);
+        }
+    }
+
+    private static String key(String pu, String server) {
+        return pu + "@" + server;
+    }
+
+    /**
+     * Close the units that were not used for the given time and have no open
+     * EntityManager.
+     *
+     * @param idleMillis Idle time in millis
+     * @return Number of units closed
+     */
+    public static int evictIdle(long idleMillis) {
+        final long now = System.currentTimeMillis();
+        final List<XPersistUnit> evicted = new ArrayList<>();
+        synchronized (UNITS) {
+            final Iterator<XPersistUnit> it = UNITS.values().iterator();
+            while (it.hasNext()) {
+                final XPersistUnit unit = it.next();
+                // A unit streaming a long result is not idle
+                if (now - unit.lastUsed >= idleMillis && unit.getOpenManagers() == 0) {
+                    evicted.add(unit);
+                    it.remove();
+                }
+            }
+        }
+        for (XPersistUnit unit : evicted) {
+            LOGGER.info("Closing idle unit [host={}, pu={}]", unit.server, unit.pu);
+            unit.close(true);
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Close all units of the registry.
+     */
+    public static void closeAll() {
+        final List<XPersistUnit> units;
+        synchronized (UNITS) {
+            units = new ArrayList<>(UNITS.values());
+            UNITS.clear();
+        }
+        for (XPersistUnit unit : units) {
+            unit.close();
+        }
+    }
+
+    /**
+     * Set the maximum number of open units.
+     * <p>
+     * Least recently used units above this limit are closed on the next
+     * {@code get()} that creates a unit.
+     *
+     * @param maxUnits Maximum number of units
+     */
+    public static void setMaxUnits(int maxUnits) {
+        if (maxUnits < 1) {
+            throw new IllegalArgumentException("XPersistUnit -> [ERROR] maxUnits must be greater than zero.");
+        }
+        synchronized (UNITS) {
+            MAX_UNITS = maxUnits;
+        }
+    }
+
+    /**
+     * Set the EclipseLink logging level of the units created from now on.
+     *
+     * @param logging Logging level, null or empty for the persistence.xml
+     * default
+     */
+    public static void setLogging(String logging) {
+        LOGGING = logging;
+    }
+
+    /**
+     * Statistics of all open units, in least recently used order.
+     *
+     * @return Statistics of each unit
+     */
+    public static List<Stats> getAllStats() {
+        final List<Stats> stats = new ArrayList<>();
+        synchronized (UNITS) {
+            for (XPersistUnit unit : UNITS.values()) {
+                stats.add(unit.getStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Create new EntityManager from this unit's factory. This EntityManager
+     * have to be closed explicity.
+     * <p>
+     * The factory stays open until this EntityManager is closed, even if the
+     * unit is evicted in the meantime. If this unit was already evicted, the
+     * EntityManager is created by the unit that replaces it in the registry.
+     *
+     * @return New EntityManager
+     * @throws IllegalStateException If this unit was closed thru
+     * {@code close()}
+     */
+    public EntityManager createManager() {
+        final boolean replaced;
+        synchronized (this) {
+            replaced = retired && evicted;
+            if (!replaced && (retired || !emf.isOpen())) {
+                throw new IllegalStateException("XPersistUnit -> [ERROR] EntityManagerFactory of " + key(pu, server) + " is close.");
+            }
+            if (!replaced) {
+                openManagers++;
+            }
+        }
+        if (replaced) {
+            // Evicted between get() and createManager(), use its replacement
+            LOGGER.debug("Unit [host={}, pu={}] was evicted, getting it again", server, pu);
+            return get(pu, server).createManager();
+        }
+        lastUsed = System.currentTimeMillis();
+        managers.getAndIncrement();
+        final EntityManager em;
+        try {
+            em = emf.createEntityManager();
+            if (cacheApplied != XPersist.getCacheVersion()) {
+                cacheApplied = XPersist.applyCacheSettings(emf);
+            }
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        return track(em);
+    }
+
+    /**
+     * Wrap an EntityManager so that closing it is counted by this unit.
+     */
+    private EntityManager track(final EntityManager em) {
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[]{EntityManager.class}, new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "close":
+                        try {
+                            return call(em, method, args);
+                        } finally {
+                            synchronized (this) {
+                                if (!closed) {
+                                    closed = true;
+                                    release();
+                                }
+                            }
+                        }
+                }
+                return call(em, method, args);
+            }
+        });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * An EntityManager of this unit was closed, close the factory if it was
+     * the last one of a closed unit.
+     */
+    private void release() {
+        final boolean last;
+        synchronized (this) {
+            openManagers--;
+            last = retired && openManagers == 0;
+        }
+        if (last) {
+            closeFactory();
+        }
+    }
+
+    /**
+     * Create new record based on given instance of this EntityClass.
+     *
+     * @param entity Instance of an Entity class that contains the fields values
+     * which will be used in creating new record
+     * @return True if record created successfully, otherwise false
+     */
+    public boolean create(Object entity) {
+        return write(entity, false);
+    }
+
+    /**
+     * Update record based on given instance of this EntityClass.
+     *
+     * @param entity Instance of an Entity Class that contains the updated
+     * fields
+     * @return True if given entity updated successfully, otherwise false
+     */
+    public boolean update(Object entity) {
+        return write(entity, true);
+    }
+
+    private boolean write(Object entity, boolean merge) {
+        final EntityManager em = createManager();
+        try {
+            em.getTransaction().begin();
+            if (merge) {
+                em.merge(entity);
+            } else {
+                em.persist(entity);
+            }
+            em.getTransaction().commit();
+            commits.getAndIncrement();
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            failures.getAndIncrement();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Check whether the factory of this unit is open.
+     *
+     * @return True if open, otherwise false
+     */
+    public synchronized boolean isOpen() {
+        return !retired && emf.isOpen();
+    }
+
+    /**
+     * Close the factory of this unit and remove it from the registry.
+     * <p>
+     * If EntityManagers of this unit are still open, the factory is closed
+     * once the last of them is closed. No EntityManager can be created from
+     * this unit anymore.
+     */
+    public void close() {
+        close(false);
+    }
+
+    /**
+     * Close this unit, evicted by the registry or closed by the user.
+     */
+    private void close(boolean evicted) {
+        synchronized (UNITS) {
+            final String key = key(pu, server);
+            if (UNITS.get(key) == this) {
+                UNITS.remove(key);
+            }
+        }
+        final int open;
+        synchronized (this) {
+            // Only the first close decides if the unit can be got again
+            if (!retired) {
+                this.evicted = evicted;
+            }
+            retired = true;
+            open = openManagers;
+        }
+        if (open == 0) {
+            closeFactory();
+        } else {
+            LOGGER.info("Unit [host={}, pu={}] will be closed after its {} open EntityManagers", server, pu, open);
+        }
+    }
+
+    private void closeFactory() {
+        synchronized (emf) {
+            if (emf.isOpen()) {
+                emf.close();
+                LOGGER.info("Unit [host={}, pu={}] is now closed...", server, pu);
+            }
+        }
+    }
+
+    /**
+     * Number of EntityManagers of this unit that are not closed yet.
+     *
+     * @return Open EntityManagers
+     */
+    public synchronized int getOpenManagers() {
+        return openManagers;
+    }
+
+    /**
+     * Factory of this unit.
+     *
+     * @return EntityManagerFactory
+     */
+    public EntityManagerFactory getFactory() {
+        return emf;
+    }
+
+    /**
+     * Snapshot of this unit's statistics.
+     *
+     * @return Statistics
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Statistics of a unit.
+     */
+    public static class Stats {
+
+        private final String pu;
+        private final String server;
+        private final long createdAt;
+        private final long creationMillis;
+        private final long lastUsed;
+        private final long managers;
+        private final long commits;
+        private final long failures;
+
+        private Stats(XPersistUnit unit) {
+            this.pu = unit.pu;
+            this.server = unit.server;
+            this.createdAt = unit.createdAt;
+            this.creationMillis = unit.creationMillis;
+            this.lastUsed = unit.lastUsed;
+            this.managers = unit.managers.get();
+            this.commits = unit.commits.get();
+            this.failures = unit.failures.get();
+        }
+
+        /**
+         * Persistence Unit name.
+         *
+         * @return Name
+         */
+        public String getPersistenceUnit() {
+            return pu;
+        }
+
+        /**
+         * Database server host address.
+         *
+         * @return Server
+         */
+        public String getServer() {
+            return server;
+        }
+
+        /**
+         * When the factory was created.
+         *
+         * @return Time in millis
+         */
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * Time spent creating the factory.
+         *
+         * @return Elapsed time in millis
+         */
+        public long getCreationMillis() {
+            return creationMillis;
+        }
+
+        /**
+         * When an EntityManager was last created from the factory.
+         *
+         * @return Time in millis
+         */
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Number of EntityManager created.
+         *
+         * @return EntityManager count
+         */
+        public long getManagers() {
+            return managers;
+        }
+
+        /**
+         * Number of {@code create/update} committed.
+         *
+         * @return Commit count
+         */
+        public long getCommits() {
+            return commits;
+        }
+
+        /**
+         * Number of {@code create/update} rolled back.
+         *
+         * @return Failure count
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[host=" + server + ", pu=" + pu + ", managers=" + managers
+                    + ", commits=" + commits + ", failures=" + failures
+                    + ", creationMillis=" + creationMillis + ", lastUsed=" + new Date(lastUsed) + "]";
+        }
+    }
+
+}
@@ -1,15 +1,25 @@
 package my.jutils.db;
 
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.sql.*;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.EntityManager;
 import org.postgresql.*;
+import org.postgresql.copy.*;
 import org.slf4j.*;
 
 /**
  * Simple Utility for PgNotification. <p>
- * This utility serves as helper for handling Postgres triggers.
+ * This utility serves as helper for handling Postgres triggers, and for
+ * streaming bulk data thru Postgres <b>COPY</b>.
+ * <br />
+ * To be notified without polling, use {@link PgNotificationDispatcher}.
  * @author Erieze Lagera
+ * @see PgNotificationDispatcher
  */
 public class XPgHelper {
 
@@ -17,6 +27,45 @@ public class XPgHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(XPgHelper.class.getSimpleName());
 
+    /**
+     * Default size in bytes of the COPY buffer.
+     */
+    public static final int COPY_BUFFER_SIZE = 65536;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /**
+     * Microseconds from the Unix epoch to the Postgres epoch (2000-01-01).
+     */
+    private static final long PG_EPOCH_MICROS = 946684800000000L;
+
+    /**
+     * Days from the Unix epoch to the Postgres epoch (2000-01-01).
+     */
+    private static final long PG_EPOCH_DAYS = 10957;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    /**
+     * Format of the data streamed thru COPY.
+     */
+    public static enum CopyFormat {
+
+        /**
+         * Comma separated values, header is not included.
+         */
+        CSV,
+        /**
+         * Postgres binary COPY format.
+         * <p>
+         * Values written from {@code Object[]} rows must exactly match the
+         * column types (eg. {@code Integer} for int4, {@code Long} for int8).
+         */
+        Binary
+    }
+
     /**
      * Execute Postgres Listener. <p>
      * Executing query Listen will invoke your Triggers. Usage of this method is
@@ -148,4 +197,302 @@ public class XPgHelper {
         return result;
     }
 
+    /**
+     * Stream rows into a table thru <b>COPY FROM STDIN</b>.
+     * <p>
+     * Rows are encoded into a buffer of {@code bufferSize} bytes which is sent
+     * to the server whenever it fills up, so memory stays bounded regardless
+     * of the number of rows. Writing blocks while the server is not
+     * consuming, which throttles the iterator naturally.
+     * <br />
+     * Supported values are {@code null}, {@link String}, {@link Short},
+     * {@link Integer}, {@link Long}, {@link Float}, {@link Double},
+     * {@link Boolean}, {@link BigDecimal}, {@code byte[]} and
+     * {@link java.util.Date} (written as timestamp), {@link java.sql.Date}
+     * (written as date) and {@link java.sql.Time} (written as time). Other
+     * values are written thru {@code toString()} in CSV format.
+     * <br />
+     * Dates and times are written in the JVM-local wall time on both
+     * formats, same as {@code PreparedStatement.setTimestamp()} into a
+     * {@code timestamp without time zone} column.
+     *
+     * @param conn Postgres connection, this will not be closed
+     * @param table Your table/entity name
+     * @param columns Columns to be written, in the same order of the row values
+     * @param rows Row values
+     * @param format Format used on the wire
+     * @param bufferSize Size of the COPY buffer in bytes
+     * @return Number of rows copied
+     * @throws SQLException If COPY failed, nothing will be written
+     */
+    public static long copyIn(Connection conn, String table, List<String> columns, Iterator<Object[]> rows, CopyFormat format, int bufferSize) throws SQLException {
+        final String sql = copyInQuery(table, columns, format);
+        final PGCopyOutputStream copy = new PGCopyOutputStream(toPGConnection(conn), sql, bufferSize);
+        try {
+            final DataOutputStream out = new DataOutputStream(copy);
+            if (format == CopyFormat.Binary) {
+                out.write(BINARY_SIGNATURE);
+                out.writeInt(0);
+                out.writeInt(0);
+            }
+            final StringBuilder line = new StringBuilder();
+            while (rows.hasNext()) {
+                final Object[] row = rows.next();
+                if (row.length != columns.size()) {
+                    throw new SQLException("XPgHelper -> [ERROR] Expected " + columns.size() + " values but got " + row.length + ".", "22023");
+                }
+                if (format == CopyFormat.Binary) {
+                    writeBinaryRow(out, row);
+                } else {
+                    line.setLength(0);
+                    writeCsvRow(line, row);
+                    out.write(line.toString().getBytes(UTF8));
+                }
+            }
+            if (format == CopyFormat.Binary) {
+                out.writeShort(-1);
+            }
+            out.flush();
+            final long count = copy.endCopy();
+            LOGGER.info("COPY {} rows into {}", count, table);
+            return count;
+        } catch (IOException | SQLException | RuntimeException e) {
+            cancel(copy);
+            LOGGER.error("Cause: {}", e.toString(), e);
+            if (e instanceof SQLException) {
+                throw (SQLException) e;
+            }
+            throw new SQLException("XPgHelper -> [ERROR] COPY into " + table + " failed: " + e, "58030", e);
+        }
+    }
+
+    /**
+     * Stream rows into a table thru <b>COPY FROM STDIN</b>, using the default
+     * buffer size.
+     *
+     * @param conn Postgres connection, this will not be closed
+     * @param table Your table/entity name
+     * @param columns Columns to be written, in the same order of the row values
+     * @param rows Row values
+     * @param format Format used on the wire
+     * @return Number of rows copied
+     * @throws SQLException If COPY failed, nothing will be written
+     * @see XPgHelper#copyIn(java.sql.Connection, java.lang.String, java.util.List, java.util.Iterator, my.jutils.db.XPgHelper.CopyFormat, int)
+     */
+    public static long copyIn(Connection conn, String table, List<String> columns, Iterator<Object[]> rows, CopyFormat format) throws SQLException {
+        return copyIn(conn, table, columns, rows, format, COPY_BUFFER_SIZE);
+    }
+
+    /**
+     * Stream CSV data into a table thru <b>COPY FROM STDIN</b>.
+     * <p>
+     * The reader is consumed in chunks of {@code COPY_BUFFER_SIZE}, the whole
+     * content is never loaded into memory.
+     *
+     * @param conn Postgres connection, this will not be closed
+     * @param table Your table/entity name
+     * @param columns Columns in the same order of the CSV fields
+     * @param reader CSV content, header is not expected
+     * @return Number of rows copied
+     * @throws SQLException If COPY failed, nothing will be written
+     */
+    public static long copyIn(Connection conn, String table, List<String> columns, Reader reader) throws SQLException {
+        try {
+            final long count = toPGConnection(conn).getCopyAPI().copyIn(copyInQuery(table, columns, CopyFormat.CSV), reader, COPY_BUFFER_SIZE);
+            LOGGER.info("COPY {} rows into {}", count, table);
+            return count;
+        } catch (IOException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            throw new SQLException("XPgHelper -> [ERROR] COPY into " + table + " failed: " + e, "58030", e);
+        }
+    }
+
+    /**
+     * Stream a table or query result thru <b>COPY TO STDOUT</b>.
+     * <p>
+     * Data is written to the given stream as it arrives from the server.
+     *
+     * @param conn Postgres connection, this will not be closed
+     * @param source Table name, or a <b>SELECT</b> query
+     * @param out Destination, this will not be closed
+     * @param format Format of the written data
+     * @return Number of rows copied
+     * @throws SQLException If COPY failed
+     */
+    public static long copyOut(Connection conn, String source, OutputStream out, CopyFormat format) throws SQLException {
+        final String from = source.trim().indexOf(' ') == -1 ? source.trim() : "(" + source + ")";
+        final String sql = "COPY " + from + " TO STDOUT WITH (FORMAT " + (format == CopyFormat.Binary ? "binary" : "csv") + ")";
+        try {
+            final long count = toPGConnection(conn).getCopyAPI().copyOut(sql, out);
+            LOGGER.info("COPY {} rows from {}", count, source);
+            return count;
+        } catch (IOException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            throw new SQLException("XPgHelper -> [ERROR] COPY from " + source + " failed: " + e, "58030", e);
+        }
+    }
+
+    /**
+     * Get the Postgres connection, unwrapping it if needed.
+     */
+    private static PGConnection toPGConnection(Connection conn) throws SQLException {
+        if (conn instanceof PGConnection) {
+            return (PGConnection) conn;
+        }
+        return conn.unwrap(PGConnection.class);
+    }
+
+    private static String copyInQuery(String table, List<String> columns, CopyFormat format) {
+        final StringBuilder sql = new StringBuilder("COPY ").append(table).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns.get(i));
+        }
+        return sql.append(") FROM STDIN WITH (FORMAT ").append(format == CopyFormat.Binary ? "binary" : "csv").append(")").toString();
+    }
+
+    private static void cancel(CopyIn copy) {
+        try {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        } catch (SQLException e) {
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+
+    private static void writeCsvRow(StringBuilder line, Object[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            final Object value = row[i];
+            if (value == null) {
+                continue;
+            }
+            // java.sql types print their local wall time, the same values written in binary
+            final String text = value instanceof java.util.Date && !(value instanceof Timestamp)
+                    && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)
+                    ? new Timestamp(((java.util.Date) value).getTime()).toString()
+                    : value instanceof byte[] ? toHex((byte[]) value)
+                    : value.toString();
+            // Empty string is quoted so it is not read as NULL
+            if (text.isEmpty() || text.indexOf(',') != -1 || text.indexOf('"') != -1 || text.indexOf('\n') != -1 || text.indexOf('\r') != -1) {
+                line.append('"').append(text.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(text);
+            }
+        }
+        line.append('\n');
+    }
+
+    /**
+     * Encode bytes as bytea hex format, eg. <i>\x0aff</i>.
+     */
+    private static String toHex(byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final StringBuilder hex = new StringBuilder(2 + bytes.length * 2).append("\\x");
+        for (byte b : bytes) {
+            hex.append(digits[(b >> 4) & 0xF]).append(digits[b & 0xF]);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Millis of the JVM-local wall time, the way {@code Timestamp.toString()}
+     * and the JDBC driver present a {@code timestamp without time zone}.
+     */
+    private static long localMillis(java.util.Date value) {
+        final long millis = value.getTime();
+        return millis + TimeZone.getDefault().getOffset(millis);
+    }
+
+    private static void writeBinaryRow(DataOutputStream out, Object[] row) throws IOException {
+        out.writeShort(row.length);
+        for (Object value : row) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else if (value instanceof String) {
+                final byte[] bytes = ((String) value).getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (value instanceof Integer) {
+                out.writeInt(4);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeInt(8);
+                out.writeLong((Long) value);
+            } else if (value instanceof Short) {
+                out.writeInt(2);
+                out.writeShort((Short) value);
+            } else if (value instanceof Double) {
+                out.writeInt(8);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeInt(4);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeInt(1);
+                out.writeByte((Boolean) value ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                out.writeInt(((byte[]) value).length);
+                out.write((byte[]) value);
+            } else if (value instanceof java.sql.Date) {
+                out.writeInt(4);
+                final long millis = localMillis((java.util.Date) value);
+                final long days = millis / MILLIS_PER_DAY - (millis % MILLIS_PER_DAY < 0 ? 1 : 0);
+                out.writeInt((int) (days - PG_EPOCH_DAYS));
+            } else if (value instanceof java.sql.Time) {
+                out.writeInt(8);
+                final long millis = localMillis((java.util.Date) value) % MILLIS_PER_DAY;
+                out.writeLong((millis < 0 ? millis + MILLIS_PER_DAY : millis) * 1000);
+            } else if (value instanceof java.util.Date) {
+                long micros = localMillis((java.util.Date) value) * 1000;
+                if (value instanceof Timestamp) {
+                    micros += (((Timestamp) value).getNanos() / 1000) % 1000;
+                }
+                out.writeInt(8);
+                out.writeLong(micros - PG_EPOCH_MICROS);
+            } else if (value instanceof BigDecimal) {
+                writeNumeric(out, (BigDecimal) value);
+            } else {
+                throw new IllegalArgumentException("XPgHelper -> [ERROR] Unsupported binary COPY value: " + value.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Write a numeric in Postgres binary format, digits are in base 10000.
+     */
+    private static void writeNumeric(DataOutputStream out, BigDecimal value) throws IOException {
+        final int dscale = Math.max(value.scale(), 0);
+        BigInteger unscaled = value.abs().setScale(dscale).unscaledValue();
+        // Align the fraction to a multiple of 4 digits, so each base-10000 digit is complete
+        final int pad = (4 - dscale % 4) % 4;
+        unscaled = unscaled.multiply(BigInteger.TEN.pow(pad));
+        final BigInteger base = BigInteger.valueOf(10000);
+        final LinkedList<Short> digits = new LinkedList<>();
+        while (unscaled.signum() != 0) {
+            final BigInteger[] qr = unscaled.divideAndRemainder(base);
+            digits.addFirst(qr[1].shortValue());
+            unscaled = qr[0];
+        }
+        final int fractionDigits = (dscale + pad) / 4;
+        int weight = digits.size() - fractionDigits - 1;
+        while (!digits.isEmpty() && digits.getLast() == 0) {
+            digits.removeLast();
+        }
+        while (!digits.isEmpty() && digits.getFirst() == 0) {
+            digits.removeFirst();
+            weight--;
+        }
+        out.writeInt(8 + digits.size() * 2);
+        out.writeShort(digits.size());
+        out.writeShort(digits.isEmpty() ? 0 : weight);
+        out.writeShort(value.signum() < 0 ? 0x4000 : 0);
+        out.writeShort(dscale);
+        for (short digit : digits) {
+            out.writeShort(digit);
+        }
+    }
+
 }
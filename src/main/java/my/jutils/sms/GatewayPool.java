@@ -0,0 +1,361 @@
+package my.jutils.sms;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.*;
+import org.slf4j.*;
+import org.smslib.*;
+
+/**
+ * Gateways started by {@link SMSModule}, and the routing of the outbound
+ * messages between them.
+ * <p>
+ * Each message is sent thru one gateway chosen by the {@link Strategy}:
+ * <blockquote>
+ * <b>RoundRobin</b> - each gateway in turn <br />
+ * <b>LeastQueued</b> - the gateway with the fewest messages in progress <br />
+ * <b>Prefix</b> - the gateway of the longest matching prefix set thru
+ * {@code setPrefixRoute()}, such as the network prefix of a carrier, else
+ * round robin
+ * </blockquote>
+ * A gateway that is not started, or that failed {@code failureThreshold}
+ * consecutive messages, is skipped until {@code cooldownMillis} elapsed since
+ * its last failure.
+ *
+ * @author Erieze Lagera
+ */
+public class GatewayPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GatewayPool.class.getSimpleName());
+
+    private final List<Gateway> gateways;
+    private final Map<String, String> prefixes;
+    private final AtomicInteger next;
+
+    private volatile Strategy strategy;
+    private volatile int failureThreshold = 3;
+    private volatile long cooldownMillis = 60000;
+
+    /**
+     * Routing strategies of the outbound messages.
+     */
+    public static enum Strategy {
+
+        /**
+         * Each gateway in turn.
+         */
+        RoundRobin,
+        /**
+         * The gateway with the fewest messages in progress.
+         */
+        LeastQueued,
+        /**
+         * The gateway of the longest matching recipient prefix.
+         */
+        Prefix
+    }
+
+    /**
+     * Create new pool.
+     *
+     * @param strategy Routing strategy
+     */
+    public GatewayPool(Strategy strategy) {
+        this.gateways = new CopyOnWriteArrayList<>();
+        this.prefixes = new ConcurrentHashMap<>();
+        this.next = new AtomicInteger();
+        this.strategy = strategy;
+    }
+
+    /**
+     * Add a gateway to the pool.
+     *
+     * @param gateway Gateway registered to the SMSLib Service
+     */
+    void add(AGateway gateway) {
+        gateways.add(new Gateway(gateway));
+    }
+
+    /**
+     * Remove every gateway from the pool.
+     *
+     * @return Removed gateways
+     */
+    List<AGateway> clear() {
+        final List<AGateway> removed = new ArrayList<>();
+        for (Gateway gateway : gateways) {
+            removed.add(gateway.gateway);
+        }
+        gateways.clear();
+        return removed;
+    }
+
+    /**
+     * Number of gateways.
+     *
+     * @return Size of the pool
+     */
+    public int size() {
+        return gateways.size();
+    }
+
+    /**
+     * Send a message thru the gateway chosen by the strategy.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Let SMSLib queue the message instead of waiting for the
+     * modem?
+     * @return Status of the message
+     * @throws TimeoutException Timeout error
+     * @throws GatewayException Gateway error, or no gateway is available
+     * @throws IOException Input/Output error
+     * @throws InterruptedException Interrupted thread
+     */
+    public OutboundMessage.MessageStatuses send(String recipient, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        final Gateway gateway = select(recipient);
+        if (gateway == null) {
+            throw new GatewayException("GatewayPool -> [ERROR] No gateway is available.");
+        }
+        gateway.inFlight.getAndIncrement();
+        boolean success = false;
+        try {
+            final OutboundMessage.MessageStatuses status = gateway.sender.send(recipient, message, async);
+            success = status == OutboundMessage.MessageStatuses.SENT;
+            return status;
+        } finally {
+            gateway.inFlight.getAndDecrement();
+            gateway.completed(success);
+        }
+    }
+
+    /**
+     * Choose the gateway of a recipient.
+     *
+     * @param recipient Recipient
+     * @return Chosen gateway, null if none is available
+     */
+    Gateway select(String recipient) {
+        final List<Gateway> available = new ArrayList<>(gateways.size());
+        for (Gateway gateway : gateways) {
+            if (gateway.isAvailable()) {
+                available.add(gateway);
+            }
+        }
+        if (available.isEmpty()) {
+            return null;
+        }
+        switch (strategy) {
+            case LeastQueued:
+                final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % available.size();
+                Gateway least = null;
+                for (int i = 0; i < available.size(); i++) {
+                    final Gateway gateway = available.get((start + i) % available.size());
+                    if (least == null || gateway.inFlight.get() < least.inFlight.get()) {
+                        least = gateway;
+                    }
+                }
+                return least;
+            case Prefix:
+                final String routed = route(recipient);
+                if (routed != null) {
+                    for (Gateway gateway : available) {
+                        if (gateway.getGatewayId().equals(routed)) {
+                            return gateway;
+                        }
+                    }
+                    LOGGER.debug("Gateway {} of {} is not available", routed, recipient);
+                }
+            // Falls back to round robin
+            default:
+                return available.get((next.getAndIncrement() & Integer.MAX_VALUE) % available.size());
+        }
+    }
+
+    /**
+     * Gateway id of the longest prefix matching the recipient.
+     */
+    private String route(String recipient) {
+        final String number = recipient.startsWith("+") ? recipient.substring(1) : recipient;
+        String match = null;
+        int length = -1;
+        for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+            if (entry.getKey().length() > length && number.startsWith(entry.getKey())) {
+                match = entry.getValue();
+                length = entry.getKey().length();
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Route the recipients starting with the given prefix to a gateway, used
+     * by the {@code Prefix} strategy.
+     *
+     * @param prefix Recipient prefix without "+", such as "63917"
+     * @param gatewayId Id of the gateway
+     * @return This pool
+     */
+    public GatewayPool setPrefixRoute(String prefix, String gatewayId) {
+        prefixes.put(prefix.startsWith("+") ? prefix.substring(1) : prefix, gatewayId);
+        return this;
+    }
+
+    /**
+     * Set the routing strategy.
+     *
+     * @param strategy Routing strategy
+     * @return This pool
+     */
+    public GatewayPool setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Get the routing strategy.
+     *
+     * @return Routing strategy
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Set the consecutive failures after which a gateway is skipped.
+     *
+     * @param failureThreshold Consecutive failures
+     * @return This pool
+     */
+    public GatewayPool setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    /**
+     * Set the time a failing gateway is skipped.
+     *
+     * @param cooldownMillis Time since the last failure in millis
+     * @return This pool
+     */
+    public GatewayPool setCooldownMillis(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+        return this;
+    }
+
+    /**
+     * Statistics of each gateway.
+     *
+     * @return Gateways in the order they were started
+     */
+    public List<Gateway> getGateways() {
+        return Collections.unmodifiableList(gateways);
+    }
+
+    /**
+     * A gateway of the pool and its statistics.
+     */
+    public class Gateway {
+
+        private final AGateway gateway;
+        private final MessageSender sender;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final RateCounter rate = new RateCounter();
+        private volatile long lastFailure;
+
+        private Gateway(AGateway gateway) {
+            this.gateway = gateway;
+            this.sender = MessageSender.of(gateway.getGatewayId());
+        }
+
+        private void completed(boolean success) {
+            rate.mark();
+            if (success) {
+                sent.getAndIncrement();
+                consecutiveFailures.set(0);
+            } else {
+                failed.getAndIncrement();
+                lastFailure = System.currentTimeMillis();
+                if (consecutiveFailures.incrementAndGet() == failureThreshold) {
+                    LOGGER.warn("Gateway {} failed {} consecutive messages, skipped for {} ms", getGatewayId(), failureThreshold, cooldownMillis);
+                }
+            }
+        }
+
+        /**
+         * Is the gateway started and not cooling down from failures?
+         *
+         * @return True if messages may be routed to it
+         */
+        public boolean isAvailable() {
+            return gateway.getStatus() == AGateway.GatewayStatuses.STARTED
+                    && (consecutiveFailures.get() < failureThreshold || System.currentTimeMillis() - lastFailure >= cooldownMillis);
+        }
+
+        /**
+         * Id of the gateway.
+         *
+         * @return Gateway id
+         */
+        public String getGatewayId() {
+            return gateway.getGatewayId();
+        }
+
+        /**
+         * Status of the gateway.
+         *
+         * @return Gateway status
+         */
+        public AGateway.GatewayStatuses getStatus() {
+            return gateway.getStatus();
+        }
+
+        /**
+         * Number of messages being sent thru the gateway.
+         *
+         * @return Messages in progress
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Number of messages sent thru the gateway.
+         *
+         * @return Sent messages
+         */
+        public long getSent() {
+            return sent.get();
+        }
+
+        /**
+         * Number of messages that failed thru the gateway.
+         *
+         * @return Failed messages
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Average messages per minute over the last minute.
+         *
+         * @return Messages per minute
+         */
+        public double getThroughput() {
+            return rate.perSecond() * 60;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s, inFlight=%d, sent=%d, failed=%d, %.1f/min]",
+                    getGatewayId(), isAvailable() ? "available" : getStatus(), inFlight.get(), sent.get(), failed.get(), getThroughput());
+        }
+    }
+
+}
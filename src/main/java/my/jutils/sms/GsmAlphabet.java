@@ -0,0 +1,99 @@
+package my.jutils.sms;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * GSM 03.38 default alphabet, one unpacked septet per byte as carried in the
+ * <i>short_message</i> of SMPP.
+ * <p>
+ * Characters of the extension table (eg. <i>{ } [ ] ~ \ | ^ €</i>) take two
+ * septets, an escape followed by the character.
+ *
+ * @author Erieze Lagera
+ */
+final class GsmAlphabet {
+
+    /**
+     * Escape to the extension table.
+     */
+    static final byte ESCAPE = 0x1B;
+
+    /**
+     * Placeholder of the escape in the basic table.
+     */
+    private static final char UNUSED = '\uFFFF';
+
+    private static final String BASIC
+            = "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞ\uFFFFÆæßÉ"
+            + " !\"#¤%&'()*+,-./"
+            + "0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNO"
+            + "PQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmno"
+            + "pqrstuvwxyzäöñüà";
+
+    private static final String EXTENSION_CHARS = "\f^{}\\[~]|€";
+    private static final byte[] EXTENSION_CODES = {0x0A, 0x14, 0x28, 0x29, 0x2F, 0x3C, 0x3D, 0x3E, 0x40, 0x65};
+
+    /**
+     * This has nothing to do since it only has static methods.
+     */
+    private GsmAlphabet() {
+    }
+
+    /**
+     * Encode a text in septets.
+     *
+     * @param text Text to be encoded
+     * @return Septets, null if a character is not in the alphabet
+     */
+    static byte[] encode(String text) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            final int basic = c == UNUSED ? -1 : BASIC.indexOf(c);
+            if (basic >= 0) {
+                out.write(basic);
+                continue;
+            }
+            final int extension = EXTENSION_CHARS.indexOf(c);
+            if (extension < 0) {
+                return null;
+            }
+            out.write(ESCAPE);
+            out.write(EXTENSION_CODES[extension]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode septets, unknown septets are decoded as <i>?</i>.
+     *
+     * @param septets Septets, one per byte
+     * @param offset Index of the first septet
+     * @return Decoded text
+     */
+    static String decode(byte[] septets, int offset) {
+        final StringBuilder text = new StringBuilder(septets.length - offset);
+        for (int i = offset; i < septets.length; i++) {
+            final int septet = septets[i] & 0x7F;
+            if (septet == ESCAPE && i + 1 < septets.length) {
+                final byte code = (byte) (septets[++i] & 0x7F);
+                char c = '?';
+                for (int j = 0; j < EXTENSION_CODES.length; j++) {
+                    if (EXTENSION_CODES[j] == code) {
+                        c = EXTENSION_CHARS.charAt(j);
+                        break;
+                    }
+                }
+                text.append(c);
+            } else {
+                final char c = BASIC.charAt(septet);
+                text.append(c == UNUSED ? ' ' : c);
+            }
+        }
+        return text.toString();
+    }
+
+}
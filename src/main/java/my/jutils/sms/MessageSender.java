@@ -0,0 +1,267 @@
+package my.jutils.sms;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.*;
+import org.smslib.*;
+import org.smslib.OutboundMessage.MessageStatuses;
+
+/**
+ * SMS message sender bound to a gateway.
+ * <p>
+ * Senders of the same gateway share one lock, so the messages to a modem are
+ * sent one at a time, while senders of different gateways send in parallel.
+ * The default sender leaves the choice of the gateway to SMSLib.
+ * <br />
+ * If a {@link RateLimiter} is set, each message waits for its token before
+ * the gateway lock is taken.
+ * <br />
+ * Each message is logged on <i>INFO</i> and its text on <i>DEBUG</i>, nothing
+ * is printed to the console.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final MessageSender sender = MessageSender.of("modem1"); <br />
+ * sender.send("+639170000000", "Hello", false);
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class MessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageSender.class.getSimpleName());
+
+    /**
+     * Lock of the default sender.
+     */
+    private static final String DEFAULT_GATEWAY = "*";
+
+    private static final ConcurrentMap<String, MessageSender> SENDERS = new ConcurrentHashMap<>();
+
+    private static volatile RateLimiter LIMITER;
+
+    private final String gatewayId;
+
+    private MessageSender(String gatewayId) {
+        this.gatewayId = gatewayId;
+    }
+
+    /**
+     * Get the sender of a gateway.
+     *
+     * @param gatewayId Id of the gateway, null for the default sender
+     * @return Sender of the gateway
+     */
+    public static MessageSender of(String gatewayId) {
+        final String key = gatewayId == null ? DEFAULT_GATEWAY : gatewayId;
+        MessageSender sender = SENDERS.get(key);
+        if (sender == null) {
+            final MessageSender created = new MessageSender(gatewayId);
+            sender = SENDERS.putIfAbsent(key, created);
+            if (sender == null) {
+                sender = created;
+            }
+        }
+        return sender;
+    }
+
+    /**
+     * Get the sender that leaves the choice of the gateway to SMSLib.
+     *
+     * @return Default sender
+     */
+    public static MessageSender getDefault() {
+        return of(null);
+    }
+
+    /**
+     * Send SMS message.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Send message asynchronously?
+     * @return Status of the message
+     * @throws TimeoutException Timeout error
+     * @throws GatewayException Gateway error
+     * @throws IOException Input/Output error
+     * @throws InterruptedException Interrupted thread
+     */
+    public MessageStatuses send(String recipient, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        if (!isStarted()) {
+            return MessageStatuses.FAILED;
+        }
+        throttle(recipient);
+        final OutboundMessage msg = new OutboundMessage(recipient, message);
+        final long start = System.nanoTime();
+        final MessageStatuses status = dispatch(msg, async) ? MessageStatuses.SENT : msg.getMessageStatus();
+        log(recipient, message, async, status, start);
+        return status;
+    }
+
+    private boolean dispatch(OutboundMessage msg, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        synchronized (this) {
+            if (async) {
+                return gatewayId == null ? SMSModule.SMS_SERVICE.queueMessage(msg) : SMSModule.SMS_SERVICE.queueMessage(msg, gatewayId);
+            }
+            return gatewayId == null ? SMSModule.SMS_SERVICE.sendMessage(msg) : SMSModule.SMS_SERVICE.sendMessage(msg, gatewayId);
+        }
+    }
+
+    /**
+     * Send SMS message to more than one recipients in one call to SMSLib.
+     * <p>
+     * If a {@link RateLimiter} is set, each message is sent as soon as its
+     * token is acquired instead, so the batch is spread at the limited rate.
+     *
+     * @param recipients Recipients
+     * @param message Message to be sent
+     * @param async Send messages asynchronously?
+     * @return SENT if at least one message was sent
+     * @throws TimeoutException Timeout error
+     * @throws GatewayException Gateway error
+     * @throws IOException Input/Output error
+     * @throws InterruptedException Interrupted thread
+     */
+    public MessageStatuses send(Collection<String> recipients, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        if (!isStarted()) {
+            return MessageStatuses.FAILED;
+        }
+        if (LIMITER != null) {
+            return sendThrottled(recipients, message, async);
+        }
+        MessageStatuses status = MessageStatuses.UNSENT;
+        final Collection<OutboundMessage> queues = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            final OutboundMessage msg = new OutboundMessage(recipient, message);
+            status = msg.getMessageStatus();
+            queues.add(msg);
+        }
+        final long start = System.nanoTime();
+        final int count;
+        synchronized (this) {
+            if (async) {
+                count = gatewayId == null ? SMSModule.SMS_SERVICE.queueMessages(queues) : SMSModule.SMS_SERVICE.queueMessages(queues, gatewayId);
+            } else {
+                count = gatewayId == null ? SMSModule.SMS_SERVICE.sendMessages(queues) : SMSModule.SMS_SERVICE.sendMessages(queues, gatewayId);
+            }
+        }
+        status = count > 0 ? MessageStatuses.SENT : status;
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("{} of {} messages {}: gateway={}, millis={}", count, recipients.size(), async ? "queued" : "sent",
+                    gatewayId == null ? DEFAULT_GATEWAY : gatewayId, (System.nanoTime() - start) / 1000000);
+        }
+        LOGGER.debug("Text: {}", message);
+        return status;
+    }
+
+    private MessageStatuses sendThrottled(Collection<String> recipients, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        int count = 0;
+        final long start = System.nanoTime();
+        for (String recipient : recipients) {
+            throttle(recipient);
+            if (dispatch(new OutboundMessage(recipient, message), async)) {
+                count++;
+            }
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("{} of {} messages {} at limited rate: gateway={}, millis={}", count, recipients.size(), async ? "queued" : "sent",
+                    gatewayId == null ? DEFAULT_GATEWAY : gatewayId, (System.nanoTime() - start) / 1000000);
+        }
+        LOGGER.debug("Text: {}", message);
+        return count > 0 ? MessageStatuses.SENT : MessageStatuses.UNSENT;
+    }
+
+    /**
+     * Send the same SMS message several times, stopping at the first failure.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param noOfSend No of times message to be sent
+     * @param async Send messages asynchronously?
+     * @return Status of the last message
+     * @throws TimeoutException Timeout error
+     * @throws GatewayException Gateway error
+     * @throws IOException Input/Output error
+     * @throws InterruptedException Interrupted thread
+     */
+    public MessageStatuses sendBlast(String recipient, String message, int noOfSend, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        MessageStatuses status = MessageStatuses.UNSENT;
+        int sequence = 0;
+        while (sequence < noOfSend) {
+            status = send(recipient, message, async);
+            if (status != MessageStatuses.SENT) {
+                LOGGER.warn("Sending message stopped at sequence [#{}]", sequence);
+                break;
+            }
+            sequence++;
+        }
+        return status;
+    }
+
+    /**
+     * Id of the gateway.
+     *
+     * @return Gateway id, null for the default sender
+     */
+    public String getGatewayId() {
+        return gatewayId;
+    }
+
+    /**
+     * Set the rate limiter consulted before each message of every sender.
+     *
+     * @param limiter Rate limiter, null to send without limit
+     */
+    public static void setRateLimiter(RateLimiter limiter) {
+        LIMITER = limiter;
+    }
+
+    /**
+     * Get the rate limiter consulted before each message.
+     *
+     * @return Rate limiter, null if there is none
+     */
+    public static RateLimiter getRateLimiter() {
+        return LIMITER;
+    }
+
+    private void throttle(String recipient) throws InterruptedException {
+        final RateLimiter limiter = LIMITER;
+        if (limiter != null) {
+            limiter.acquire(gatewayId, recipient);
+        }
+    }
+
+    private boolean isStarted() {
+        if (SMSModule.SMS_SERVICE == null) {
+            return false;
+        }
+        if (gatewayId == null) {
+            return SMSModule.GATEWAY != null && SMSModule.isGatewayStarted();
+        }
+        final AGateway gateway = SMSModule.SMS_SERVICE.getGateway(gatewayId);
+        if (gateway == null || gateway.getStatus() != AGateway.GatewayStatuses.STARTED) {
+            LOGGER.warn("Gateway {} is not started.", gatewayId);
+            return false;
+        }
+        return true;
+    }
+
+    private void log(String recipient, String message, boolean async, MessageStatuses status, long start) {
+        if (status == MessageStatuses.SENT) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Message {}: to={}, gateway={}, millis={}", async ? "queued" : "sent", recipient,
+                        gatewayId == null ? DEFAULT_GATEWAY : gatewayId, (System.nanoTime() - start) / 1000000);
+            }
+        } else if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Message not sent: to={}, gateway={}, status={}", recipient,
+                    gatewayId == null ? DEFAULT_GATEWAY : gatewayId, status);
+        }
+        LOGGER.debug("Text: {}", message);
+    }
+
+}
@@ -0,0 +1,47 @@
+package my.jutils.sms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Events per second over the last minute.
+ * <p>
+ * Counts are kept per epoch second in a ring of 60 slots, a slot is reset
+ * when it is reused for a newer second.
+ *
+ * @author Erieze Lagera
+ */
+class RateCounter {
+
+    private final AtomicLongArray counts = new AtomicLongArray(60);
+    private final AtomicLongArray seconds = new AtomicLongArray(60);
+
+    /**
+     * Count one event.
+     */
+    void mark() {
+        final long second = System.currentTimeMillis() / 1000;
+        final int i = (int) (second % 60);
+        final long previous = seconds.get(i);
+        if (previous != second && seconds.compareAndSet(i, previous, second)) {
+            counts.set(i, 0);
+        }
+        counts.getAndIncrement(i);
+    }
+
+    /**
+     * Average events per second over the last minute.
+     *
+     * @return Events per second
+     */
+    double perSecond() {
+        final long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < 60; i++) {
+            if (now - seconds.get(i) < 60) {
+                total += counts.get(i);
+            }
+        }
+        return total / 60d;
+    }
+
+}
@@ -0,0 +1,265 @@
+package my.jutils.sms;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.*;
+
+/**
+ * Token bucket rate limiter of the outbound messages.
+ * <p>
+ * A message takes one token from each bucket that applies to it: the global
+ * bucket, the bucket of its gateway and the bucket of the longest prefix
+ * matching its recipient. Each bucket refills at its rate per second, up to
+ * its burst size. When a bucket is empty the sender waits until its token is
+ * refilled, so the waiting senders are served in order and never exceed the
+ * rate.
+ * <br />
+ * Consulted by {@link MessageSender} and {@link SMPPModule} once set thru
+ * their {@code setRateLimiter()}.
+ * <br /><br />
+ * Here's a snippet on how to use it: <br />
+ * <table>
+ * <tr> <td>
+ * final RateLimiter limiter = new RateLimiter() <br />
+ * <blockquote>
+ * .setGatewayRate("modem1", 0.15, 1) // ~9 SMS per minute <br />
+ * .setPrefixRate("63917", 50, 50); <br />
+ * </blockquote>
+ * MessageSender.setRateLimiter(limiter);
+ * </td> </tr>
+ * </table>
+ *
+ * @author Erieze Lagera
+ */
+public class RateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class.getSimpleName());
+
+    private volatile Bucket global;
+    private final Map<String, Bucket> gateways;
+    private final Map<String, Bucket> prefixes;
+
+    /**
+     * Create new limiter without any limit.
+     */
+    public RateLimiter() {
+        this.gateways = new ConcurrentHashMap<>();
+        this.prefixes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Limit every message.
+     *
+     * @param perSecond Messages per second
+     * @param burst Messages that may be sent at once after an idle period
+     * @return This limiter
+     */
+    public RateLimiter setGlobalRate(double perSecond, int burst) {
+        this.global = new Bucket("global", perSecond, burst);
+        return this;
+    }
+
+    /**
+     * Limit the messages of a gateway.
+     *
+     * @param gatewayId Id of the gateway, or the system id of an SMPP bind
+     * @param perSecond Messages per second
+     * @param burst Messages that may be sent at once after an idle period
+     * @return This limiter
+     */
+    public RateLimiter setGatewayRate(String gatewayId, double perSecond, int burst) {
+        gateways.put(gatewayId, new Bucket("gateway:" + gatewayId, perSecond, burst));
+        return this;
+    }
+
+    /**
+     * Limit the messages to the recipients starting with a prefix, such as
+     * the network prefix of a carrier.
+     *
+     * @param prefix Recipient prefix without "+"
+     * @param perSecond Messages per second
+     * @param burst Messages that may be sent at once after an idle period
+     * @return This limiter
+     */
+    public RateLimiter setPrefixRate(String prefix, double perSecond, int burst) {
+        final String key = prefix.startsWith("+") ? prefix.substring(1) : prefix;
+        prefixes.put(key, new Bucket("prefix:" + key, perSecond, burst));
+        return this;
+    }
+
+    /**
+     * Wait until a message may be sent.
+     *
+     * @param gatewayId Id of the gateway, null if it is unknown
+     * @param recipient Recipient of the message
+     * @return Time waited in millis
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public long acquire(String gatewayId, String recipient) throws InterruptedException {
+        long wait = 0;
+        final Bucket all = global;
+        if (all != null) {
+            wait = Math.max(wait, all.reserve());
+        }
+        final Bucket gateway = gatewayId == null ? null : gateways.get(gatewayId);
+        if (gateway != null) {
+            wait = Math.max(wait, gateway.reserve());
+        }
+        final Bucket prefix = prefix(recipient);
+        if (prefix != null) {
+            wait = Math.max(wait, prefix.reserve());
+        }
+        if (wait > 0) {
+            LOGGER.debug("Throttled {} for {} ms", recipient, TimeUnit.NANOSECONDS.toMillis(wait));
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(wait);
+    }
+
+    private Bucket prefix(String recipient) {
+        if (recipient == null || prefixes.isEmpty()) {
+            return null;
+        }
+        final String number = recipient.startsWith("+") ? recipient.substring(1) : recipient;
+        Bucket match = null;
+        int length = -1;
+        for (Map.Entry<String, Bucket> entry : prefixes.entrySet()) {
+            if (entry.getKey().length() > length && number.startsWith(entry.getKey())) {
+                match = entry.getValue();
+                length = entry.getKey().length();
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Statistics of every bucket.
+     *
+     * @return Buckets, global first
+     */
+    public List<Bucket> getBuckets() {
+        final List<Bucket> buckets = new ArrayList<>();
+        if (global != null) {
+            buckets.add(global);
+        }
+        buckets.addAll(gateways.values());
+        buckets.addAll(prefixes.values());
+        return buckets;
+    }
+
+    /**
+     * A token bucket and its statistics.
+     */
+    public static class Bucket {
+
+        private final String name;
+        private final double perSecond;
+        private final double burst;
+        private final RateCounter rate = new RateCounter();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+
+        private double tokens;
+        private long refilled;
+
+        private Bucket(String name, double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("RateLimiter -> [ERROR] Rate must be positive and burst at least 1.");
+            }
+            this.name = name;
+            this.perSecond = perSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilled = System.nanoTime();
+        }
+
+        /**
+         * Take a token, the bucket may go in debt so that the next callers
+         * wait longer.
+         *
+         * @return Time to wait in nanos before the token is available
+         */
+        private long reserve() {
+            final long wait;
+            synchronized (this) {
+                final long now = System.nanoTime();
+                tokens = Math.min(burst, tokens + (now - refilled) * perSecond / 1e9);
+                refilled = now;
+                tokens -= 1;
+                wait = tokens >= 0 ? 0 : (long) (-tokens / perSecond * 1e9);
+            }
+            rate.mark();
+            if (wait > 0) {
+                throttled.getAndIncrement();
+                waitNanos.getAndAdd(wait);
+            }
+            return wait;
+        }
+
+        /**
+         * Name of the bucket, such as <i>global</i>, <i>gateway:modem1</i> or
+         * <i>prefix:63917</i>.
+         *
+         * @return Bucket name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Configured rate.
+         *
+         * @return Messages per second
+         */
+        public double getRate() {
+            return perSecond;
+        }
+
+        /**
+         * Messages that passed thru the bucket, averaged over the last
+         * minute.
+         *
+         * @return Messages per second
+         */
+        public double getCurrentRate() {
+            return rate.perSecond();
+        }
+
+        /**
+         * Number of messages that had to wait.
+         *
+         * @return Throttled messages
+         */
+        public long getThrottled() {
+            return throttled.get();
+        }
+
+        /**
+         * Total time waited by the throttled messages.
+         *
+         * @return Wait time in millis
+         */
+        public long getWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+        }
+
+        /**
+         * Average time waited by a throttled message.
+         *
+         * @return Wait time in millis
+         */
+        public double getAverageWaitMillis() {
+            final long n = throttled.get();
+            return n == 0 ? 0 : waitNanos.get() / (n * 1e6);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[rate=%.2f/s, current=%.2f/s, throttled=%d, avgWait=%.1fms]",
+                    name, perSecond, getCurrentRate(), throttled.get(), getAverageWaitMillis());
+        }
+    }
+
+}
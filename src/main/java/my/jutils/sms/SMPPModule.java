@@ -0,0 +1,661 @@
+package my.jutils.sms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+import my.jutils.Times;
+import my.jutils.services.BackgroundThreadFactory;
+import my.jutils.sms.SMSModule.Status;
+import org.jsmpp.SMPPConstant;
+import org.jsmpp.bean.*;
+import org.jsmpp.extra.*;
+import org.jsmpp.session.*;
+import org.jsmpp.util.*;
+import org.slf4j.*;
+
+/**
+ * <b>SMPP Module Framework.</b>
+ * <p>
+ * Same send and read surface as {@link SMSModule}, thru an SMSC over SMPP
+ * instead of a serial modem. The session is bound as transceiver, so the
+ * same connection sends the messages and receives the inbound messages and
+ * delivery receipts.
+ *
+ * Up to {@code windowSize()} <i>submit_sm</i> may wait for their response at
+ * the same time, {@code submit()} blocks while the window is full. The SMSC
+ * is polled with <i>enquire_link</i> every {@code enquireLinkInterval()}
+ * millis so that idle connections are not dropped. Delivery receipts are
+ * requested for every message, and reported to the {@link ReceiptListener}.
+ * A receipt of an unknown message id is matched again shortly after, since
+ * it may arrive before the response of its <i>submit_sm</i> is handled.
+ *
+ * Messages are encoded in the GSM 03.38 default alphabet, or in UCS2 if a
+ * character is not in it. Like SMSLib does for {@code SMSModule}, a message
+ * longer than 160 GSM or 70 UCS2 characters is split in concatenated parts
+ * with a user data header, each part is a <i>submit_sm</i> with its own
+ * message id and delivery receipt.
+ *
+ * Like {@code SMSModule}, extend this class and implement the
+ * {@link SMPPProperties}.
+ *
+ * @author Erieze Lagera
+ */
+abstract public class SMPPModule implements SMPPProperties {
+
+    private static final String CLASS_NAME = SMPPModule.class.getSimpleName();
+    private static final Logger LOGGER = LoggerFactory.getLogger(CLASS_NAME);
+
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final Charset UCS2 = Charset.forName("UTF-16BE");
+
+    /**
+     * Data coding of ISO-8859-1, not defined by jsmpp.
+     */
+    private static final byte DATA_CODING_LATIN1 = 3;
+
+    /**
+     * Septets of a GSM message and octets of a UCS2 message.
+     */
+    private static final int MAX_GSM_LENGTH = 160;
+    private static final int MAX_UCS2_LENGTH = 140;
+
+    /**
+     * Concatenated SMS header with an 8-bit reference: length, IEI, IE
+     * length, reference, total parts, part number.
+     */
+    private static final int UDH_LENGTH = 6;
+
+    /**
+     * Time to wait for the response of a PDU.
+     */
+    public static final long TRANSACTION_TIMER = 10000;
+
+    /**
+     * Maximum number of message ids waiting for their delivery receipt, the
+     * oldest are forgotten.
+     */
+    public static final int MAX_PENDING_RECEIPTS = 100000;
+
+    /**
+     * Time to wait before matching again a receipt of an unknown message id,
+     * since a receipt may arrive before the submitting thread got the id.
+     */
+    private static final long RECEIPT_RETRY_DELAY = 500;
+
+    private final Collection<List<String>> unsentMessage;
+    private final Queue<List<String>> inbox;
+    private final Map<String, String> pendingReceipts;
+    private final AtomicInteger sent;
+    private final AtomicInteger failed;
+    private final AtomicLong delivered;
+    private final AtomicLong undelivered;
+    private final RateCounter throughput;
+    private final AtomicInteger reference;
+
+    private volatile SMPPSession session;
+    private Semaphore window;
+    private ExecutorService submitters;
+    private ScheduledExecutorService receiptRetries;
+    private volatile ReceiptListener receiptListener;
+    private volatile RateLimiter limiter;
+    private volatile Status status;
+
+    /**
+     * Receives the delivery receipts.
+     */
+    public static interface ReceiptListener {
+
+        /**
+         * Invoked from the SMPP reader thread, this must return quickly.
+         *
+         * @param messageId Id returned by {@code submit()}
+         * @param recipient Recipient of the message, null if the message was
+         * not sent by this module
+         * @param state Final state of the message
+         */
+        public void receiptReceived(String messageId, String recipient, DeliveryReceiptState state);
+
+    }
+
+    /**
+     * Create an instance of SMPP Module.
+     */
+    public SMPPModule() {
+        this.unsentMessage = Collections.synchronizedList(new ArrayList<List<String>>());
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.pendingReceipts = Collections.synchronizedMap(new LinkedHashMap<String, String>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_PENDING_RECEIPTS;
+            }
+        });
+        this.sent = new AtomicInteger();
+        this.failed = new AtomicInteger();
+        this.delivered = new AtomicLong();
+        this.undelivered = new AtomicLong();
+        this.throughput = new RateCounter();
+        this.reference = new AtomicInteger();
+        this.status = Status.Waiting;
+    }
+
+    /**
+     * Connect and bind to the SMSC.
+     *
+     * @return True if the session is bound, otherwise false
+     */
+    synchronized public boolean start() {
+        LOGGER.info("Binding to SMSC {}:{}...", host(), port());
+        final SMPPSession smpp = new SMPPSession();
+        smpp.setEnquireLinkTimer(enquireLinkInterval());
+        smpp.setTransactionTimer(TRANSACTION_TIMER);
+        smpp.setMessageReceiverListener(new Receiver());
+        smpp.addSessionStateListener(new SessionStateListener() {
+            @Override
+            public void onStateChange(SessionState newState, SessionState oldState, Object source) {
+                LOGGER.info("SMPP session {} -> {}", oldState, newState);
+                if (!newState.isBound() && status == Status.Started) {
+                    status = Status.Failed;
+                }
+            }
+        });
+        try {
+            smpp.connectAndBind(host(), port(), new BindParameter(BindType.BIND_TRX, systemId(), password(), systemType(),
+                    TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, null));
+        } catch (IOException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            status = Status.Failed;
+            return false;
+        }
+        session = smpp;
+        window = new Semaphore(windowSize());
+        submitters = Executors.newCachedThreadPool(new BackgroundThreadFactory(CLASS_NAME + "-Submit"));
+        receiptRetries = Executors.newSingleThreadScheduledExecutor(new BackgroundThreadFactory(CLASS_NAME + "-Receipt"));
+        status = Status.Started;
+        LOGGER.info("SMPP session bound! Send and Read module is now available...");
+        return true;
+    }
+
+    /**
+     * Unbind and close the session.
+     * <p>
+     * The messages waiting for their response are not cancelled, they fail
+     * if the session is closed before the response arrives.
+     *
+     * @return True if the session was closed, false if it was not started
+     */
+    synchronized public boolean shutdown() {
+        if (session == null) {
+            return false;
+        }
+        LOGGER.info("Unbinding from SMSC...");
+        submitters.shutdown();
+        receiptRetries.shutdown();
+        session.unbindAndClose();
+        session = null;
+        status = Status.Shutdown;
+        return true;
+    }
+
+    /**
+     * Restart the session.
+     *
+     * @return True if the session was bound again, otherwise false
+     */
+    synchronized public boolean restart() {
+        shutdown();
+        return start();
+    }
+
+    /**
+     * Check if the session is bound and may send messages.
+     *
+     * @return True if the session is bound, otherwise false
+     */
+    public boolean isBound() {
+        final SMPPSession smpp = session;
+        return smpp != null && smpp.getSessionState().isTransmittable();
+    }
+
+    /**
+     * Submit an SMS message, waiting for the {@link RateLimiter} and while the
+     * window is full.
+     * <p>
+     * The returned Future gives the message id assigned by the SMSC, which is
+     * also given to the {@link ReceiptListener} with its delivery receipt.
+     * For a long message this is the id of the first part, every part gets
+     * its own receipt.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @return Future message id
+     * @throws InterruptedException Interrupted while waiting for the window
+     */
+    public Future<String> submit(final String recipient, final String message) throws InterruptedException {
+        final Segments segments = segment(message, reference.getAndIncrement() & 0xFF);
+        final SMPPSession smpp;
+        final Semaphore permits;
+        final ExecutorService executor;
+        synchronized (this) {
+            if (session == null) {
+                throw new IllegalStateException("SMPPModule -> [ERROR] Session is not started.");
+            }
+            smpp = session;
+            permits = window;
+            executor = submitters;
+        }
+        final RateLimiter rate = limiter;
+        if (rate != null) {
+            // Each part is a submit_sm counted by the SMSC
+            for (int i = 0; i < segments.parts.size(); i++) {
+                rate.acquire(systemId(), recipient);
+            }
+        }
+        // A message longer than the window takes the whole window
+        final int size = Math.min(segments.parts.size(), windowSize());
+        permits.acquire(size);
+        try {
+            return executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    try {
+                        String first = null;
+                        for (byte[] part : segments.parts) {
+                            final String id = submitShortMessage(smpp, recipient, segments, part);
+                            pendingReceipts.put(id, recipient);
+                            if (first == null) {
+                                first = id;
+                            }
+                        }
+                        final String id = first;
+                        sent.getAndIncrement();
+                        throughput.mark();
+                        LOGGER.debug("Message {} submitted to {}", id, recipient);
+                        return id;
+                    } catch (Exception e) {
+                        LOGGER.warn("Message to {} not sent. Cause: {}", recipient, e.toString());
+                        final List<String> l = new ArrayList<>();
+                        l.add(recipient);
+                        l.add(message);
+                        unsentMessage.add(l);
+                        failed.getAndIncrement();
+                        throw e;
+                    } finally {
+                        permits.release(size);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release(size);
+            throw e;
+        }
+    }
+
+    private String submitShortMessage(SMPPSession smpp, String recipient, Segments segments, byte[] part) throws Exception {
+        final ESMClass esm = segments.parts.size() > 1 ? new ESMClass(MessageMode.DEFAULT, MessageType.DEFAULT, GSMSpecificFeature.UDHI) : new ESMClass();
+        return smpp.submitShortMessage(null,
+                TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, sourceAddress(),
+                TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, recipient,
+                esm, (byte) 0, (byte) 1, null, null,
+                new RegisteredDelivery(SMSCDeliveryReceipt.SUCCESS_FAILURE), (byte) 0,
+                segments.coding, (byte) 0, part);
+    }
+
+    /**
+     * Encoded parts of a message.
+     */
+    private static class Segments {
+
+        private final DataCoding coding;
+        private final List<byte[]> parts;
+
+        Segments(DataCoding coding, List<byte[]> parts) {
+            this.coding = coding;
+            this.parts = parts;
+        }
+    }
+
+    /**
+     * Encode a message and split it in concatenated parts if it does not fit
+     * in one <i>short_message</i>. An escaped GSM character or a UCS2
+     * surrogate pair is never split between two parts.
+     */
+    private static Segments segment(String message, int reference) {
+        final boolean gsm = GsmAlphabet.encode(message) != null;
+        final List<byte[]> units = new ArrayList<>(message.length());
+        int length = 0;
+        for (int i = 0; i < message.length();) {
+            final int end = i + Character.charCount(message.codePointAt(i));
+            final String unit = message.substring(i, end);
+            final byte[] bytes = gsm ? GsmAlphabet.encode(unit) : unit.getBytes(UCS2);
+            units.add(bytes);
+            length += bytes.length;
+            i = end;
+        }
+        final DataCoding coding = new GeneralDataCoding(gsm ? Alphabet.ALPHA_DEFAULT : Alphabet.ALPHA_UCS2);
+        final int max = gsm ? MAX_GSM_LENGTH : MAX_UCS2_LENGTH;
+        if (length <= max) {
+            return new Segments(coding, Collections.singletonList(join(units, 0, units.size(), null)));
+        }
+        // The header takes 6 octets, 7 septets once the SMSC packs the GSM text
+        final int partMax = gsm ? max - 7 : max - UDH_LENGTH;
+        final List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        int size = 0;
+        for (int i = 0; i < units.size(); i++) {
+            if (size + units.get(i).length > partMax) {
+                ranges.add(new int[]{start, i});
+                start = i;
+                size = 0;
+            }
+            size += units.get(i).length;
+        }
+        ranges.add(new int[]{start, units.size()});
+        if (ranges.size() > 255) {
+            throw new IllegalArgumentException("SMPPModule -> [ERROR] Message is too long, it needs more than 255 parts.");
+        }
+        final List<byte[]> parts = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            final byte[] udh = {UDH_LENGTH - 1, 0x00, 0x03, (byte) reference, (byte) ranges.size(), (byte) (i + 1)};
+            parts.add(join(units, ranges.get(i)[0], ranges.get(i)[1], udh));
+        }
+        return new Segments(coding, parts);
+    }
+
+    private static byte[] join(List<byte[]> units, int from, int to, byte[] header) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (header != null) {
+            out.write(header, 0, header.length);
+        }
+        for (int i = from; i < to; i++) {
+            out.write(units.get(i), 0, units.get(i).length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Send SMS message.
+     * <p>
+     * To confirm if message is sent, get the total sent number from
+     * {@code getSent()} or {@code getFailed()} for total failed, like
+     * {@link SMSModule#send(java.lang.String, java.lang.String, boolean)}.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Return as soon as the message is submitted, instead of
+     * waiting for the response of the SMSC?
+     * @throws InterruptedException Interrupted thread
+     */
+    public void send(String recipient, String message, boolean async) throws InterruptedException {
+        final Future<String> id = submit(recipient, message);
+        if (!async) {
+            try {
+                id.get();
+            } catch (ExecutionException e) {
+                // Already counted as failed
+                LOGGER.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Send SMS message to more than one recipients.
+     * <p>
+     * Up to {@code windowSize()} messages are submitted at the same time.
+     *
+     * @param recipients Recipients
+     * @param message Message to be sent
+     * @param async Return as soon as the messages are submitted, instead of
+     * waiting for the responses of the SMSC?
+     * @throws InterruptedException Interrupted thread
+     */
+    public void send(Collection<String> recipients, String message, boolean async) throws InterruptedException {
+        final List<Future<String>> ids = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            ids.add(submit(recipient, message));
+        }
+        if (!async) {
+            for (Future<String> id : ids) {
+                try {
+                    id.get();
+                } catch (ExecutionException e) {
+                    LOGGER.debug(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the inbound messages received since the last read.
+     * <p>
+     * Index of the List is the same as {@link ReadMessages}:
+     * <blockquote>
+     * {@code MSG_DATE} = date <br />
+     * {@code MSG_ORIGINATOR} = originator <br />
+     * {@code MSG_TEXT} = message
+     * </blockquote>
+     *
+     * @return Collection of the read messages
+     */
+    public Collection<List<String>> read() {
+        final Collection<List<String>> messages = new ArrayList<>();
+        List<String> message;
+        while ((message = inbox.poll()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Receives the inbound messages and the delivery receipts.
+     */
+    private class Receiver implements MessageReceiverListener {
+
+        @Override
+        public void onAcceptDeliverSm(DeliverSm deliverSm) throws ProcessRequestException {
+            if (MessageType.SMSC_DEL_RECEIPT.containedIn(deliverSm.getEsmClass())) {
+                try {
+                    receipt(deliverSm.getShortMessageAsDeliveryReceipt(), true);
+                } catch (InvalidDeliveryReceiptException e) {
+                    LOGGER.warn("Invalid delivery receipt from {}. Cause: {}", deliverSm.getSourceAddr(), e.toString());
+                }
+                return;
+            }
+            final byte[] bytes = deliverSm.getShortMessage() == null ? new byte[0] : deliverSm.getShortMessage();
+            // Parts of a long message are read one by one, without their header
+            final int offset = GSMSpecificFeature.UDHI.containedIn(deliverSm.getEsmClass()) && bytes.length > 0
+                    ? Math.min(bytes.length, (bytes[0] & 0xFF) + 1) : 0;
+            Alphabet alphabet;
+            try {
+                alphabet = Alphabet.parseDataCoding(deliverSm.getDataCoding());
+            } catch (IllegalArgumentException e) {
+                alphabet = Alphabet.ALPHA_DEFAULT;
+            }
+            final String text;
+            if (alphabet == Alphabet.ALPHA_UCS2) {
+                text = new String(bytes, offset, bytes.length - offset, UCS2);
+            } else if (alphabet == Alphabet.ALPHA_8_BIT || deliverSm.getDataCoding() == DATA_CODING_LATIN1) {
+                text = new String(bytes, offset, bytes.length - offset, LATIN1);
+            } else {
+                text = GsmAlphabet.decode(bytes, offset);
+            }
+            final List<String> l = new ArrayList<>();
+            l.add(ReadMessages.MSG_DATE, Times.toDateFormat(new Date(), "EEE MMM dd yyyy hh:mm:ss a"));
+            l.add(ReadMessages.MSG_ORIGINATOR, deliverSm.getSourceAddr());
+            l.add(ReadMessages.MSG_TEXT, text);
+            inbox.add(l);
+            LOGGER.debug("Message received from {}", deliverSm.getSourceAddr());
+        }
+
+        @Override
+        public void onAcceptAlertNotification(AlertNotification alertNotification) {
+            LOGGER.debug("Alert notification received");
+        }
+
+        @Override
+        public DataSmResult onAcceptDataSm(DataSm dataSm, Session source) throws ProcessRequestException {
+            throw new ProcessRequestException("data_sm is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+    }
+
+    private void receipt(final DeliveryReceipt receipt, boolean retry) {
+        String id = receipt.getId();
+        String recipient = pendingReceipts.remove(id);
+        if (recipient == null) {
+            // Some SMSC give the id in decimal in the receipt, and in hex in submit_sm_resp
+            try {
+                final String hex = Long.toHexString(Long.parseLong(id));
+                recipient = pendingReceipts.remove(hex);
+                if (recipient != null) {
+                    id = hex;
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Receipt id {} is not decimal", id);
+            }
+        }
+        final ScheduledExecutorService retries = receiptRetries;
+        if (recipient == null && retry && retries != null) {
+            try {
+                retries.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        receipt(receipt, false);
+                    }
+                }, RECEIPT_RETRY_DELAY, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Session is closing, receipt {} is not matched again", id);
+            }
+        }
+        if (receipt.getFinalStatus() == DeliveryReceiptState.DELIVRD) {
+            delivered.getAndIncrement();
+        } else {
+            undelivered.getAndIncrement();
+        }
+        LOGGER.debug("Delivery receipt of {}: {}", id, receipt.getFinalStatus());
+        final ReceiptListener listener = receiptListener;
+        if (listener != null) {
+            try {
+                listener.receiptReceived(id, recipient, receipt.getFinalStatus());
+            } catch (RuntimeException e) {
+                LOGGER.error("Cause: {}", e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Set the listener of the delivery receipts.
+     *
+     * @param receiptListener Listener, null to remove it
+     * @return This module
+     */
+    public SMPPModule setReceiptListener(ReceiptListener receiptListener) {
+        this.receiptListener = receiptListener;
+        return this;
+    }
+
+    /**
+     * Set the rate limiter consulted before each <i>submit_sm</i>.
+     * <p>
+     * The gateway of the messages is the {@code systemId()} of this bind.
+     *
+     * @param limiter Rate limiter, null to submit without limit
+     * @return This module
+     */
+    public SMPPModule setRateLimiter(RateLimiter limiter) {
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * List of unsent message.
+     * <p>
+     * Index of List:
+     * <blockquote>
+     * 0 = recipient <br />
+     * 1 = message
+     * </blockquote>
+     *
+     * @return Unsent messages
+     */
+    public Collection<List<String>> getUnsentMessage() {
+        return unsentMessage;
+    }
+
+    /**
+     * Get the number of messages accepted by the SMSC.
+     *
+     * @return Sent messages
+     */
+    public int getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Get the number of messages rejected by the SMSC or not submitted.
+     *
+     * @return Failed messages
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Get the number of delivery receipts of delivered messages.
+     *
+     * @return Delivered messages
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Get the number of delivery receipts of messages that were not
+     * delivered, such as expired or rejected messages.
+     *
+     * @return Undelivered messages
+     */
+    public long getUndelivered() {
+        return undelivered.get();
+    }
+
+    /**
+     * Get the number of submitted messages waiting for their response.
+     *
+     * @return Outstanding PDUs
+     */
+    public synchronized int getOutstanding() {
+        return window == null ? 0 : windowSize() - window.availablePermits();
+    }
+
+    /**
+     * Get the average number of messages accepted per second over the last
+     * minute.
+     *
+     * @return Messages per second
+     */
+    public double getThroughput() {
+        return throughput.perSecond();
+    }
+
+    /**
+     * The status of the session.
+     *
+     * @return Status result
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,66 @@
+package my.jutils.sms;
+
+/**
+ * Properties for an SMPP connection.
+ *
+ * @author Erieze Lagera
+ */
+public interface SMPPProperties {
+
+    /**
+     * Host of the SMSC.
+     *
+     * @return SMSC host
+     */
+    public String host();
+
+    /**
+     * Port of the SMSC.
+     *
+     * @return SMSC port
+     */
+    public int port();
+
+    /**
+     * The ESME account given by the SMSC.
+     *
+     * @return System Id
+     */
+    public String systemId();
+
+    /**
+     * Password of the ESME account.
+     *
+     * @return Password
+     */
+    public String password();
+
+    /**
+     * The system type given by the SMSC, usually empty.
+     *
+     * @return System Type
+     */
+    public String systemType();
+
+    /**
+     * The sender of the outbound messages, for example a short code.
+     *
+     * @return Source address
+     */
+    public String sourceAddress();
+
+    /**
+     * Maximum number of <i>submit_sm</i> waiting for their response.
+     *
+     * @return Window size
+     */
+    public int windowSize();
+
+    /**
+     * Interval of the <i>enquire_link</i> keepalive.
+     *
+     * @return Interval in millis
+     */
+    public int enquireLinkInterval();
+
+}
@@ -0,0 +1,612 @@
+package my.jutils.sms;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import my.jutils.services.BackgroundThreadFactory;
+import org.slf4j.*;
+
+/**
+ * Append-only journal of the outbound messages, so that the queued and
+ * failed messages survive a crash or a restart.
+ * <p>
+ * Each message is recorded when it is queued, and again when it is sent or
+ * failed. {@code append()} returns once the record is on disk. Appenders
+ * that wait at the same time share one {@code force()}, the first one syncs
+ * every record written so far while the others wait for it (group commit),
+ * so the cost of the sync is spread across the concurrent messages.
+ * {@code appendAll()} records the messages of a broadcast with one
+ * {@code force()}.
+ * <br />
+ * Writes and syncs are not interruptible. If an interrupt closes the file
+ * anyway, it is opened again and the torn record is truncated, and the
+ * interrupt status of the thread is kept.
+ * <br />
+ * {@code getPending()} gives the messages that were neither sent nor
+ * failed, and the failed messages with their number of attempts, for
+ * {@link SMSModule} to queue again on {@code start()}. A message that was sent right before a crash may be sent
+ * twice, since its <i>sent</i> record is not synced.
+ * <br />
+ * The journal is rewritten with only the pending messages every
+ * {@code COMPACT_INTERVAL} minutes, when it holds more finished records than
+ * pending ones.
+ * <br /><br />
+ * Record format: <i>length (int), CRC32 (int), type (byte), id (long)</i>,
+ * followed by the recipient and the message in modified UTF-8 for the
+ * <i>queued</i> records. A torn record at the end of the file is truncated
+ * when the journal is opened.
+ *
+ * @author Erieze Lagera
+ */
+public class SMSJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMSJournal.class.getSimpleName());
+
+    /**
+     * Interval of the compaction in minutes.
+     */
+    public static final int COMPACT_INTERVAL = 5;
+
+    /**
+     * Minimum number of finished records before the journal is compacted.
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private static final byte QUEUED = 1;
+    private static final byte SENT = 2;
+    private static final byte FAILED = 3;
+
+    private final Path path;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final LinkedHashMap<Long, Entry> live;
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong syncs = new AtomicLong();
+
+    private FileChannel channel;
+    private long nextId;
+    private long dead;
+    private volatile long written;
+    private long synced;
+    private boolean syncing;
+
+    /**
+     * A message that was not sent yet.
+     */
+    public static class Entry {
+
+        private final long id;
+        private final String recipient;
+        private final String message;
+        private int attempts;
+
+        private Entry(long id, String recipient, String message) {
+            this.id = id;
+            this.recipient = recipient;
+            this.message = message;
+        }
+
+        /**
+         * Id of the message in the journal.
+         *
+         * @return Journal id
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Recipient of the message.
+         *
+         * @return Recipient
+         */
+        public String getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * Content of the message.
+         *
+         * @return Message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Did the last attempt fail?
+         *
+         * @return True if the message failed, false if it was still queued
+         */
+        public boolean isFailed() {
+            return attempts > 0;
+        }
+
+        /**
+         * Number of failed attempts to send the message.
+         *
+         * @return Failed attempts
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    private SMSJournal(Path path) {
+        this.path = path;
+        this.live = new LinkedHashMap<>();
+        this.nextId = 1;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(new BackgroundThreadFactory(SMSJournal.class.getSimpleName() + "-Compactor"));
+    }
+
+    /**
+     * Open a journal, creating the file if it does not exist.
+     *
+     * @param file Journal file
+     * @return Opened journal
+     * @throws IOException Cannot read or create the file
+     */
+    public static SMSJournal open(File file) throws IOException {
+        final SMSJournal journal = new SMSJournal(file.toPath());
+        journal.load();
+        journal.compactor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.compactIfNeeded();
+                } catch (IOException e) {
+                    LOGGER.error("Cause: {}", e.toString(), e);
+                }
+            }
+        }, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MINUTES);
+        return journal;
+    }
+
+    /**
+     * Read the records and truncate a torn record at the end.
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long position = 0;
+        long records = 0;
+        final long size = channel.size();
+        while (position + 8 <= size) {
+            final int length = in.readInt();
+            final int crc = in.readInt();
+            if (length < 9 || position + 8 + length > size) {
+                break;
+            }
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            if (crc(data) != crc) {
+                break;
+            }
+            apply(data);
+            position += 8 + length;
+            records++;
+        }
+        if (position < size) {
+            LOGGER.warn("Truncating {} bytes of a torn record from {}", size - position, path);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        long kept = live.size();
+        for (Entry entry : live.values()) {
+            kept += entry.attempts;
+        }
+        dead = records - kept;
+        LOGGER.info("Journal {} opened with {} pending messages", path, live.size());
+    }
+
+    private void apply(byte[] data) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final byte type = in.readByte();
+        final long id = in.readLong();
+        nextId = Math.max(nextId, id + 1);
+        switch (type) {
+            case QUEUED:
+                live.put(id, new Entry(id, in.readUTF(), in.readUTF()));
+                break;
+            case SENT:
+                live.remove(id);
+                break;
+            case FAILED:
+                final Entry entry = live.get(id);
+                if (entry != null) {
+                    entry.attempts++;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Record a queued message, returning once it is on disk.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @return Journal id of the message
+     * @throws IOException Cannot write the journal
+     */
+    public long append(String recipient, String message) throws IOException {
+        final long id;
+        final long sequence;
+        synchronized (writeLock) {
+            id = nextId++;
+            sequence = write(record(QUEUED, id, recipient, message));
+            live.put(id, new Entry(id, recipient, message));
+        }
+        sync(sequence);
+        return id;
+    }
+
+    /**
+     * Record the same queued message for several recipients, returning once
+     * every record is on disk. The records are synced once.
+     *
+     * @param recipients Recipients
+     * @param message Message to be sent
+     * @return Journal ids of the messages, in the order of the recipients
+     * @throws IOException Cannot write the journal
+     */
+    public long[] appendAll(Collection<String> recipients, String message) throws IOException {
+        final long[] ids = new long[recipients.size()];
+        long sequence = 0;
+        synchronized (writeLock) {
+            int i = 0;
+            try {
+                for (String recipient : recipients) {
+                    final long id = nextId++;
+                    sequence = write(record(QUEUED, id, recipient, message));
+                    live.put(id, new Entry(id, recipient, message));
+                    ids[i++] = id;
+                }
+            } catch (IOException e) {
+                // None of the messages is queued, do not replay the recorded ones
+                for (int j = 0; j < i; j++) {
+                    live.remove(ids[j]);
+                    try {
+                        write(record(SENT, ids[j], null, null));
+                        dead += 2;
+                    } catch (IOException ex) {
+                        LOGGER.debug("Cannot discard message {}. Cause: {}", ids[j], ex.toString());
+                    }
+                }
+                throw e;
+            }
+        }
+        sync(sequence);
+        return ids;
+    }
+
+    /**
+     * Record a sent message. This is not synced, a crash before the next
+     * sync queues the message again on the next start.
+     *
+     * @param id Journal id of the message
+     * @throws IOException Cannot write the journal
+     */
+    public void sent(long id) throws IOException {
+        synchronized (writeLock) {
+            final Entry entry = live.remove(id);
+            if (entry != null) {
+                write(record(SENT, id, null, null));
+                dead += 2 + entry.attempts;
+            }
+        }
+    }
+
+    /**
+     * Forget a message that was recorded but could not be queued.
+     *
+     * @param id Journal id of the message
+     * @throws IOException Cannot write the journal
+     */
+    public void discard(long id) throws IOException {
+        sent(id);
+    }
+
+    /**
+     * Record a failed message, it is queued again on the next start unless
+     * it is discarded.
+     *
+     * @param id Journal id of the message
+     * @return Number of failed attempts so far, 0 if the message is not
+     * pending
+     * @throws IOException Cannot write the journal
+     */
+    public int failed(long id) throws IOException {
+        synchronized (writeLock) {
+            final Entry entry = live.get(id);
+            if (entry == null) {
+                return 0;
+            }
+            write(record(FAILED, id, null, null));
+            return ++entry.attempts;
+        }
+    }
+
+    /**
+     * Messages that were neither sent nor failed, and the failed messages, in
+     * the order they were queued.
+     *
+     * @return Pending messages
+     */
+    public List<Entry> getPending() {
+        synchronized (writeLock) {
+            return new ArrayList<>(live.values());
+        }
+    }
+
+    /**
+     * Write a record, holding {@code writeLock}.
+     *
+     * @return Sequence of the record
+     */
+    private long write(byte[] data) throws IOException {
+        if (channel == null) {
+            throw new IOException("SMSJournal -> [ERROR] Journal is closed.");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + data.length);
+        buffer.putInt(data.length).putInt(crc(data)).put(data).flip();
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                long position = Long.MAX_VALUE;
+                try {
+                    position = channel.position();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    return ++written;
+                } catch (ClosedChannelException e) {
+                    // Closed by an interrupt of this or the syncing thread
+                    interrupted |= reopen(channel, position);
+                    buffer.rewind();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Open the file again after an interrupt closed it, holding
+     * {@code writeLock}, truncating what was written after the given
+     * position if it is within the file.
+     *
+     * @return True if the thread was interrupted meanwhile, the interrupt
+     * status is cleared
+     */
+    private boolean reopen(FileChannel closed, long position) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        if (channel != closed || closed.isOpen()) {
+            return interrupted;
+        }
+        LOGGER.warn("Journal {} was closed by an interrupt, opening it again", path);
+        while (true) {
+            final FileChannel opened = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (position < opened.size()) {
+                    opened.truncate(position);
+                }
+                opened.position(opened.size());
+                channel = opened;
+                return interrupted;
+            } catch (ClosedByInterruptException e) {
+                Thread.interrupted();
+                interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * Wait until the given record is on disk, syncing every record written so
+     * far if no other thread is syncing.
+     */
+    private void sync(long sequence) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                final FileChannel target;
+                synchronized (syncLock) {
+                    while (syncing && synced < sequence) {
+                        try {
+                            syncLock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (synced >= sequence) {
+                        return;
+                    }
+                    syncing = true;
+                }
+                final long upTo;
+                synchronized (writeLock) {
+                    target = channel;
+                    upTo = written;
+                }
+                IOException failure = null;
+                boolean done = false;
+                interrupted |= Thread.interrupted();
+                try {
+                    if (target == null) {
+                        throw new IOException("SMSJournal -> [ERROR] Journal is closed.");
+                    }
+                    target.force(false);
+                    syncs.getAndIncrement();
+                    done = true;
+                } catch (ClosedChannelException e) {
+                    interrupted |= Thread.interrupted();
+                    synchronized (writeLock) {
+                        if (channel != target) {
+                            // Replaced by compact(), which synced every record, or closed, check again
+                            LOGGER.debug("Journal was replaced while syncing");
+                        } else if (e instanceof AsynchronousCloseException) {
+                            // Closed by an interrupt, the written records are still in the file
+                            try {
+                                interrupted |= reopen(target, Long.MAX_VALUE);
+                            } catch (IOException ex) {
+                                failure = ex;
+                            }
+                        } else {
+                            failure = e;
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (done) {
+                        synced = Math.max(synced, upTo);
+                    }
+                    syncLock.notifyAll();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Compact the journal if it holds enough finished records.
+     *
+     * @throws IOException Cannot rewrite the journal
+     */
+    public void compactIfNeeded() throws IOException {
+        synchronized (writeLock) {
+            if (dead >= COMPACT_THRESHOLD && dead > live.size()) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the pending messages.
+     * <p>
+     * The new journal is written to a temporary file, synced, then moved over
+     * the journal, so a crash leaves either the old or the new journal.
+     *
+     * @throws IOException Cannot rewrite the journal
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            if (channel == null) {
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            final Path temp = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : live.values()) {
+                    writeTo(out, record(QUEUED, entry.id, entry.recipient, entry.message));
+                    for (int i = 0; i < entry.attempts; i++) {
+                        writeTo(out, record(FAILED, entry.id, null, null));
+                    }
+                }
+                out.force(true);
+            }
+            channel.force(false);
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            LOGGER.info("Journal {} compacted, dropped {} records in {} ms", path, dead, System.currentTimeMillis() - start);
+            dead = 0;
+            // Every record written so far is in the synced file
+            synchronized (syncLock) {
+                synced = Math.max(synced, written);
+            }
+        }
+    }
+
+    private static void writeTo(FileChannel out, byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + data.length);
+        buffer.putInt(data.length).putInt(crc(data)).put(data).flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] record(byte type, long id, String recipient, String message) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(recipient == null ? 9 : 13 + recipient.length() + message.length() * 3);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeLong(id);
+        if (type == QUEUED) {
+            out.writeUTF(recipient);
+            out.writeUTF(message);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int crc(byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Number of pending messages.
+     *
+     * @return Pending messages
+     */
+    public int getPendingCount() {
+        synchronized (writeLock) {
+            return live.size();
+        }
+    }
+
+    /**
+     * Number of records written since the journal was opened.
+     *
+     * @return Written records
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Number of {@code force()} calls since the journal was opened, lower
+     * than the number of appends when they were grouped.
+     *
+     * @return Sync count
+     */
+    public long getSyncCount() {
+        return syncs.get();
+    }
+
+    /**
+     * Sync and close the journal.
+     *
+     * @throws IOException Cannot sync the journal
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        synchronized (writeLock) {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+}
@@ -5,8 +5,14 @@ import my.jutils.services.SMSServiceThread;
 import java.awt.HeadlessException;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.*;
@@ -35,6 +41,23 @@ import org.smslib.modem.*;
  * from the handy JUtils package which includes tools for String, Numbers, and
  * others.
  *
+ * Messages may also be queued thru {@code enqueue()}, which returns a
+ * {@link Ticket} right away. The queued messages are sent by a pool of
+ * outbound workers, configured by {@code setOutboundWorkers()} and
+ * {@code setOutboundCapacity()}. When the queue is full, {@code enqueue()}
+ * blocks until a worker takes a message, so a large broadcast cannot exhaust
+ * the memory. Once {@code shutdown()} is invoked, the queued messages are
+ * cancelled and {@code enqueue()} is rejected until the next {@code start()}.
+ * More modems may be added thru {@code addModem()}, the queued
+ * messages are then spread between them by the {@link GatewayPool}.
+ *
+ * If a journal is set thru {@code setJournal()}, every queued message is
+ * recorded in a {@link SMSJournal} before {@code enqueue()} returns, which
+ * fails if the message cannot be recorded. The messages that were not sent
+ * before a crash or a shutdown, and the failed ones, are queued again on the
+ * next {@code start()}. A message is dropped from the journal once it failed
+ * {@code setMaxAttempts()} times.
+ *
  * <b>Important!</b>
  * <i>Note that you'll need to configure the necessary driver for <u>RXTX</u>
  * before using this module. So that this module works perfectly. Please refer
@@ -62,6 +85,54 @@ abstract public class SMSModule implements GSMProperties {
     private final AtomicInteger failed;
     private final ExecutorService thread;
 
+    /**
+     * Default number of messages waiting in the outbound queue.
+     */
+    public static final int DEFAULT_OUTBOUND_CAPACITY = 10000;
+    /**
+     * Default number of outbound workers.
+     */
+    public static final int DEFAULT_OUTBOUND_WORKERS = 2;
+    /**
+     * Default number of attempts to send a journaled message.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * Seconds {@code shutdown()} waits for the outbound workers to finish
+     * their current message before closing the journal.
+     */
+    public static final int OUTBOUND_STOP_TIMEOUT = 30;
+
+    private int outboundCapacity = DEFAULT_OUTBOUND_CAPACITY;
+    private int outboundWorkers = DEFAULT_OUTBOUND_WORKERS;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Outbound queue and its workers, created on first {@code enqueue()}.
+     */
+    private BlockingQueue<Ticket> outbound;
+    private ExecutorService workers;
+
+    /**
+     * Set by {@code shutdown()}, no message is queued until the next
+     * {@code start()}.
+     */
+    private boolean outboundStopped;
+
+    private File journalFile;
+    private volatile SMSJournal journal;
+
+    private final AtomicLong enqueued;
+    private final AtomicLong completed;
+    private final RateCounter throughput;
+
+    /**
+     * Modems started together with this module's own, see
+     * {@code addModem()}.
+     */
+    private final List<GSMProperties> modems;
+    private final GatewayPool pool;
+
     /**
      * Service for manual Garbage Collection.
      */
@@ -76,11 +147,16 @@ abstract public class SMSModule implements GSMProperties {
      */
     public SMSModule() {
         // This should be re-initialized every time this module was called
-        this.unsentMessage = new ArrayList<>();
+        this.unsentMessage = Collections.synchronizedList(new ArrayList<List<String>>());
         this.sent = new AtomicInteger();
         this.failed = new AtomicInteger();
         this.status = Status.Waiting;
         this.thread = Executors.newCachedThreadPool(new BackgroundThreadFactory(CLASS_NAME + "-SMSThread"));
+        this.enqueued = new AtomicLong();
+        this.completed = new AtomicLong();
+        this.throughput = new RateCounter();
+        this.modems = new ArrayList<>();
+        this.pool = new GatewayPool(GatewayPool.Strategy.RoundRobin);
     }
 
     /**
@@ -93,6 +169,7 @@ abstract public class SMSModule implements GSMProperties {
      */
     synchronized public boolean start() throws GatewayException, HeadlessException, IOException, InterruptedException {
         final AtomicBoolean result = new AtomicBoolean();
+        outboundStopped = false;
         if (autoGC()) {
             gcd = Executors.newSingleThreadScheduledExecutor(new BackgroundThreadFactory(CLASS_NAME + "-GarbageCollector"));
         }
@@ -106,20 +183,7 @@ abstract public class SMSModule implements GSMProperties {
         try {
             LOGGER.info("Initializing SMS Module...");
 
-            SMSModule.GATEWAY = new SerialModemGateway(gatewayId(), commPort(), baudRate(), manufacturer(), model());
-            SMSModule.GATEWAY.setProtocol(AGateway.Protocols.PDU);
-            SMSModule.GATEWAY.setSimPin("0000");
-            SMSModule.GATEWAY.setSmscNumber(smscNumber());
-            SMSModule.GATEWAY.setInbound(true);
-            SMSModule.GATEWAY.setOutbound(true);
-
-            /**
-             * Note: According to this article,
-             * https://code.google.com/p/smslib/issues/detail?id=486 some modem
-             * should set Storage Location manually to avoid
-             * IndexOutOfBoundExceptions.
-             */
-            SMSModule.GATEWAY.getATHandler().setStorageLocations("SM");
+            SMSModule.GATEWAY = createGateway(this);
 
             // Setup the notification methods.
             SMSModule.SMS_SERVICE = Service.getInstance();
@@ -129,7 +193,17 @@ abstract public class SMSModule implements GSMProperties {
             SMSModule.SMS_SERVICE.setGatewayStatusNotification(statusNotification);
             SMSModule.SMS_SERVICE.setOrphanedMessageNotification(orphanedMessageNotification);
 
+            // Gateways of the previous start() are registered to the same Service
+            for (AGateway previous : pool.clear()) {
+                SMSModule.SMS_SERVICE.removeGateway(previous);
+            }
             SMSModule.SMS_SERVICE.addGateway(SMSModule.GATEWAY);
+            pool.add(SMSModule.GATEWAY);
+            for (GSMProperties modem : modems) {
+                final SerialModemGateway gateway = createGateway(modem);
+                SMSModule.SMS_SERVICE.addGateway(gateway);
+                pool.add(gateway);
+            }
 
             final SMSServiceThread servicet = new SMSServiceThread(SMSServiceThread.Actions.Start);
             thread.submit(servicet);
@@ -148,6 +222,7 @@ abstract public class SMSModule implements GSMProperties {
                 modemInfo();
                 LOGGER.info("Gateway started! Send, Read and Console module is now available...");
                 status = Status.Started;
+                openJournal();
                 if (autoGC()) {
                     gcd.scheduleWithFixedDelay(new Runnable() {
                         @Override
@@ -171,6 +246,54 @@ abstract public class SMSModule implements GSMProperties {
         return result.get();
     }
 
+    /**
+     * Create the gateway of a modem.
+     */
+    private static SerialModemGateway createGateway(GSMProperties modem) {
+        final SerialModemGateway gateway = new SerialModemGateway(modem.gatewayId(), modem.commPort(), modem.baudRate(), modem.manufacturer(), modem.model());
+        gateway.setProtocol(AGateway.Protocols.PDU);
+        gateway.setSimPin("0000");
+        gateway.setSmscNumber(modem.smscNumber());
+        gateway.setInbound(true);
+        gateway.setOutbound(true);
+
+        /**
+         * Note: According to this article,
+         * https://code.google.com/p/smslib/issues/detail?id=486 some modem
+         * should set Storage Location manually to avoid
+         * IndexOutOfBoundExceptions.
+         */
+        gateway.getATHandler().setStorageLocations("SM");
+        return gateway;
+    }
+
+    /**
+     * Add a modem to be started together with this module's own modem.
+     * <p>
+     * This must be invoked before {@code start()}. Each modem must have its
+     * own gateway id and COMM port. The messages queued thru
+     * {@code enqueue()} are routed between the modems by the
+     * {@link GatewayPool}.
+     *
+     * @param modem Properties of the modem
+     * @return This module
+     * @see SMSModule#getGatewayPool()
+     */
+    public synchronized SMSModule addModem(GSMProperties modem) {
+        modems.add(modem);
+        return this;
+    }
+
+    /**
+     * Get the started gateways, to configure their routing and to read their
+     * statistics.
+     *
+     * @return Gateway pool
+     */
+    public GatewayPool getGatewayPool() {
+        return pool;
+    }
+
     /**
      * Shutdown the SMS Gateway.
      *
@@ -179,6 +302,12 @@ abstract public class SMSModule implements GSMProperties {
      * @throws InterruptedException Interrupted thread
      */
     synchronized public boolean shutdown() throws InterruptedException {
+        final ExecutorService stopped = stopOutbound();
+        // Workers record their last message before the journal is closed
+        if (stopped != null && !stopped.awaitTermination(OUTBOUND_STOP_TIMEOUT, TimeUnit.SECONDS)) {
+            LOGGER.warn("Outbound workers still running after {} seconds, their messages may be sent again on the next start", OUTBOUND_STOP_TIMEOUT);
+        }
+        closeJournal();
         if (isGatewayStarted()) {
             LOGGER.info("Shutting down SMS gateway...");
             final SMSServiceThread servicet = new SMSServiceThread(SMSServiceThread.Actions.Shutdown);
@@ -288,10 +417,11 @@ abstract public class SMSModule implements GSMProperties {
     }
 
     /**
-     * Send SMS message to more than one recipients asynchronously.
+     * Send SMS message to more than one recipients.
      * <p>
-     * This action was only invoking {@code send(String, String, boolean}
-     * multiple times based on the size of the Collection.
+     * The messages are queued like {@code enqueue()} and sent by the outbound
+     * workers, this returns when every message is sent or failed. If a journal
+     * is set, the messages are recorded together with one sync.
      *
      * @param recipients Recipients
      * @param message Message to be sent
@@ -300,15 +430,426 @@ abstract public class SMSModule implements GSMProperties {
      * @throws GatewayException Gateway error
      * @throws IOException Input/Output error
      * @throws InterruptedException Interrupted thread
-     * @see SMSModule#send(java.lang.String, java.lang.String, boolean)
+     * @see SMSModule#enqueue(java.lang.String, java.lang.String, boolean)
      */
     public void send(Collection<String> recipients, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        final List<Ticket> tickets = new ArrayList<>(recipients.size());
         for (String recipient : recipients) {
-            send(recipient, message, async);
+            tickets.add(new Ticket(recipient, message, async, pool));
+        }
+        final List<Ticket> queued = new ArrayList<>(tickets.size());
+        try {
+            final BlockingQueue<Ticket> queue = openOutbound();
+            record(tickets, recipients, message);
+            for (Ticket ticket : tickets) {
+                queue.put(ticket);
+                checkQueued(queue, ticket);
+                enqueued.getAndIncrement();
+                queued.add(ticket);
+            }
+        } catch (IllegalStateException e) {
+            final int rejected = reject(tickets.subList(queued.size(), tickets.size()));
+            LOGGER.warn("{} messages were not queued, the module has been shutdown", rejected);
+        } catch (IOException | InterruptedException e) {
+            reject(tickets.subList(queued.size(), tickets.size()));
+            throw e;
+        }
+        for (Ticket ticket : queued) {
+            try {
+                ticket.get();
+            } catch (ExecutionException | CancellationException e) {
+                // Already counted as failed by the worker or by shutdown()
+                LOGGER.debug(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Queue an SMS message, waiting while the outbound queue is full.
+     * <p>
+     * The message is sent by one of the outbound workers. The result is
+     * available thru the returned ticket, and is also counted in
+     * {@code getSent()}, {@code getFailed()} and {@code getUnsentMessage()}.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Let SMSLib queue the message instead of waiting for the
+     * modem?
+     * @return Ticket of the message
+     * @throws InterruptedException Interrupted while waiting for space in the
+     * queue
+     * @throws IOException Cannot record the message in the journal
+     * @throws IllegalStateException If the module has been shutdown
+     */
+    public Ticket enqueue(String recipient, String message, boolean async) throws InterruptedException, IOException {
+        final BlockingQueue<Ticket> queue = openOutbound();
+        final Ticket ticket = new Ticket(recipient, message, async, pool);
+        record(ticket);
+        try {
+            queue.put(ticket);
+        } catch (InterruptedException e) {
+            forget(ticket);
+            throw e;
+        }
+        checkQueued(queue, ticket);
+        enqueued.getAndIncrement();
+        return ticket;
+    }
+
+    /**
+     * Queue an SMS message, waiting up to the given time while the outbound
+     * queue is full.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Let SMSLib queue the message instead of waiting for the
+     * modem?
+     * @param timeout Maximum time to wait for space in the queue
+     * @param unit Unit of {@code timeout}
+     * @return Ticket of the message, null if the queue is still full
+     * @throws InterruptedException Interrupted while waiting for space in the
+     * queue
+     * @throws IOException Cannot record the message in the journal
+     * @throws IllegalStateException If the module has been shutdown
+     */
+    public Ticket enqueue(String recipient, String message, boolean async, long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        final BlockingQueue<Ticket> queue = openOutbound();
+        final Ticket ticket = new Ticket(recipient, message, async, pool);
+        record(ticket);
+        boolean queued = false;
+        try {
+            queued = queue.offer(ticket, timeout, unit);
+        } finally {
+            if (!queued) {
+                forget(ticket);
+            }
+        }
+        if (!queued) {
+            return null;
+        }
+        checkQueued(queue, ticket);
+        enqueued.getAndIncrement();
+        return ticket;
+    }
+
+    /**
+     * Get the outbound queue, unless the module has been shutdown.
+     */
+    private synchronized BlockingQueue<Ticket> openOutbound() {
+        if (outboundStopped) {
+            throw new IllegalStateException("SMSModule -> [ERROR] Outbound queue has been stopped. Did you invoke start()?");
+        }
+        return outbound();
+    }
+
+    /**
+     * A producer blocked on a full queue may get in after {@code shutdown()}
+     * drained it, take the ticket back from the orphaned queue.
+     */
+    private void checkQueued(BlockingQueue<Ticket> queue, Ticket ticket) {
+        synchronized (this) {
+            if (queue == outbound) {
+                return;
+            }
+        }
+        if (queue.remove(ticket)) {
+            ticket.cancel(false);
+            forget(ticket);
+            throw new IllegalStateException("SMSModule -> [ERROR] Outbound queue has been stopped. Did you invoke start()?");
+        }
+        // Otherwise it was drained and cancelled by shutdown()
+    }
+
+    /**
+     * Create the outbound queue and start its workers.
+     */
+    private synchronized BlockingQueue<Ticket> outbound() {
+        if (outbound == null) {
+            final BlockingQueue<Ticket> queue = new LinkedBlockingQueue<>(outboundCapacity);
+            outbound = queue;
+            // At least one worker per gateway, so that every modem is kept busy
+            final int size = Math.max(outboundWorkers, pool.size());
+            final ExecutorService executor = Executors.newFixedThreadPool(size, new BackgroundThreadFactory(CLASS_NAME + "-Outbound"));
+            workers = executor;
+            for (int i = 0; i < size; i++) {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain(queue, executor);
+                    }
+                });
+            }
+            LOGGER.info("Outbound queue started with {} workers", size);
+        }
+        return outbound;
+    }
+
+    /**
+     * Send the queued messages until the workers are shutdown.
+     * <p>
+     * A ticket may be cancelled by its caller, which interrupts the worker
+     * if it is running. The message is counted as unsent and the interrupt
+     * is cleared, so only {@code stopOutbound()} stops the worker.
+     */
+    private void drain(BlockingQueue<Ticket> queue, ExecutorService executor) {
+        try {
+            while (!executor.isShutdown()) {
+                final Ticket ticket = queue.take();
+                ticket.run();
+                boolean success = false;
+                try {
+                    success = ticket.get() == OutboundMessage.MessageStatuses.SENT;
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Message to {} not sent. Cause: {}", ticket.getRecipient(), e.getCause().toString());
+                } catch (CancellationException e) {
+                    LOGGER.debug("Message to {} was cancelled", ticket.getRecipient());
+                    // Interrupted by cancel(true), not by shutdown()
+                    Thread.interrupted();
+                }
+                if (success) {
+                    addSent();
+                } else {
+                    addUnsent(ticket);
+                }
+                if (ticket.isCancelled()) {
+                    forget(ticket);
+                } else {
+                    finish(ticket, success);
+                }
+                markCompleted();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Outbound worker stopped");
+        }
+    }
+
+    /**
+     * Stop the outbound workers, the messages still in the queue are
+     * cancelled and counted as unsent.
+     *
+     * @return Stopped workers, null if the outbound queue was not started
+     */
+    private synchronized ExecutorService stopOutbound() {
+        outboundStopped = true;
+        if (outbound == null) {
+            return null;
+        }
+        final ExecutorService stopped = workers;
+        stopped.shutdownNow();
+        final List<Ticket> pending = new ArrayList<>();
+        outbound.drainTo(pending);
+        for (Ticket ticket : pending) {
+            ticket.cancel(false);
+            addUnsent(ticket);
+        }
+        if (!pending.isEmpty()) {
+            LOGGER.warn("{} queued messages were not sent", pending.size());
+        }
+        outbound = null;
+        workers = null;
+        return stopped;
+    }
+
+    /**
+     * Open the journal set thru {@code setJournal()} and queue again the
+     * messages that were not sent.
+     */
+    private void openJournal() {
+        if (journalFile == null || journal != null) {
+            return;
+        }
+        try {
+            journal = SMSJournal.open(journalFile);
+        } catch (IOException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+            return;
+        }
+        final List<SMSJournal.Entry> pending = journal.getPending();
+        int replayed = 0;
+        int dropped = 0;
+        for (SMSJournal.Entry entry : pending) {
+            if (entry.getAttempts() >= maxAttempts) {
+                try {
+                    journal.discard(entry.getId());
+                } catch (IOException e) {
+                    LOGGER.error("Cause: {}", e.toString(), e);
+                }
+                addUnsent(entry.getRecipient(), entry.getMessage());
+                dropped++;
+                continue;
+            }
+            final Ticket ticket = new Ticket(entry.getRecipient(), entry.getMessage(), false, pool);
+            ticket.journal = journal;
+            ticket.journalId = entry.getId();
+            if (!outbound().offer(ticket)) {
+                LOGGER.warn("Outbound queue is full, {} journaled messages are left for the next start", pending.size() - replayed - dropped);
+                break;
+            }
+            enqueued.getAndIncrement();
+            replayed++;
+        }
+        if (replayed > 0) {
+            LOGGER.info("{} journaled messages queued again", replayed);
+        }
+        if (dropped > 0) {
+            LOGGER.warn("{} journaled messages dropped after {} attempts", dropped, maxAttempts);
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.error("Cause: {}", e.toString(), e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Record a queued message in the journal, if any.
+     */
+    private void record(Ticket ticket) throws IOException {
+        final SMSJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        ticket.journalId = current.append(ticket.getRecipient(), ticket.getMessage());
+        ticket.journal = current;
+    }
+
+    /**
+     * Record the queued messages of a broadcast in the journal, if any.
+     */
+    private void record(List<Ticket> tickets, Collection<String> recipients, String message) throws IOException {
+        final SMSJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        final long[] ids = current.appendAll(recipients, message);
+        for (int i = 0; i < ids.length; i++) {
+            tickets.get(i).journalId = ids[i];
+            tickets.get(i).journal = current;
+        }
+    }
+
+    /**
+     * Record a sent or failed message in the journal of its ticket.
+     */
+    private void finish(Ticket ticket, boolean success) {
+        if (ticket.journal == null) {
+            return;
+        }
+        try {
+            if (success) {
+                ticket.journal.sent(ticket.journalId);
+            } else if (ticket.journal.failed(ticket.journalId) >= maxAttempts) {
+                LOGGER.warn("Message to {} dropped from the journal after {} attempts", ticket.getRecipient(), maxAttempts);
+                ticket.journal.discard(ticket.journalId);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Message to {} not journaled. Cause: {}", ticket.getRecipient(), e.toString());
+        }
+    }
+
+    /**
+     * Remove a message that could not be queued from the journal.
+     */
+    private void forget(Ticket ticket) {
+        if (ticket.journal == null) {
+            return;
+        }
+        try {
+            ticket.journal.discard(ticket.journalId);
+        } catch (IOException e) {
+            LOGGER.warn("Message to {} not journaled. Cause: {}", ticket.getRecipient(), e.toString());
+        }
+    }
+
+    /**
+     * Count the messages that could not be queued as unsent, and remove them
+     * from the journal.
+     */
+    private int reject(List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            forget(ticket);
+            addUnsent(ticket);
+        }
+        return tickets.size();
+    }
+
+    private void addUnsent(Ticket ticket) {
+        addUnsent(ticket.getRecipient(), ticket.getMessage());
+    }
+
+    private void addUnsent(String recipient, String message) {
+        final List<String> l = new ArrayList<>();
+        l.add(recipient);
+        l.add(message);
+        setUnsentMessage(l);
+        addFailed();
+    }
+
+    private void markCompleted() {
+        completed.getAndIncrement();
+        throughput.mark();
+    }
+
+    /**
+     * A queued SMS message.
+     * <p>
+     * {@code get()} waits until the message is sent thru the gateway chosen
+     * by the {@link GatewayPool}, and returns its status. A cancelled message
+     * is counted as unsent and removed from the journal.
+     */
+    public static class Ticket extends FutureTask<OutboundMessage.MessageStatuses> {
+
+        private final String recipient;
+        private final String message;
+        private final long enqueuedAt;
+        private SMSJournal journal;
+        private long journalId;
+
+        private Ticket(final String recipient, final String message, final boolean async, final GatewayPool pool) {
+            super(new Callable<OutboundMessage.MessageStatuses>() {
+                @Override
+                public OutboundMessage.MessageStatuses call() throws Exception {
+                    return pool.send(recipient, message, async);
+                }
+            });
+            this.recipient = recipient;
+            this.message = message;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Recipient of the message.
+         *
+         * @return Recipient
+         */
+        public String getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * Content of the message.
+         *
+         * @return Message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Time the message was queued.
+         *
+         * @return Epoch millis
+         */
+        public long getEnqueuedAt() {
+            return enqueuedAt;
         }
-        /*final SMSThread smst = new SMSThread(recipients, message, async);
-         smst.setAction(SMSThread.Actions.Send);
-         thread.submit(smst);*/
     }
 
     /**
@@ -504,6 +1045,108 @@ abstract public class SMSModule implements GSMProperties {
         this.failed.getAndIncrement();
     }
 
+    /**
+     * Set the number of messages that may wait in the outbound queue.
+     * <p>
+     * This must be invoked before the first {@code enqueue()}.
+     *
+     * @param outboundCapacity Queue capacity
+     * @return This module
+     */
+    public SMSModule setOutboundCapacity(int outboundCapacity) {
+        this.outboundCapacity = outboundCapacity;
+        return this;
+    }
+
+    /**
+     * Set the file of the journal of the queued messages.
+     * <p>
+     * This must be invoked before {@code start()}, which queues again the
+     * messages left in the journal.
+     *
+     * @param journalFile Journal file, null to queue the messages in memory
+     * only
+     * @return This module
+     */
+    public SMSModule setJournal(File journalFile) {
+        this.journalFile = journalFile;
+        return this;
+    }
+
+    /**
+     * Set the number of failed attempts after which a journaled message is
+     * dropped instead of being queued again on {@code start()}.
+     *
+     * @param maxAttempts Maximum attempts, at least 1
+     * @return This module
+     */
+    public SMSModule setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("SMSModule -> [ERROR] Maximum attempts must be at least 1.");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Get the journal of the queued messages.
+     *
+     * @return Journal, null if there is none or the module is not started
+     */
+    public SMSJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Set the number of threads sending the queued messages.
+     * <p>
+     * This must be invoked before the first {@code enqueue()}.
+     *
+     * @param outboundWorkers Number of workers
+     * @return This module
+     */
+    public SMSModule setOutboundWorkers(int outboundWorkers) {
+        this.outboundWorkers = outboundWorkers;
+        return this;
+    }
+
+    /**
+     * Get the number of messages waiting in the outbound queue.
+     *
+     * @return Queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return outbound == null ? 0 : outbound.size();
+    }
+
+    /**
+     * Get the number of messages queued thru {@code enqueue()}.
+     *
+     * @return Queued messages
+     */
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    /**
+     * Get the number of queued messages that were sent or failed.
+     *
+     * @return Completed messages
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Get the average number of queued messages completed per second over
+     * the last minute.
+     *
+     * @return Messages per second
+     */
+    public double getThroughput() {
+        return throughput.perSecond();
+    }
+
     /**
      * The result status in sending SMS.
      *
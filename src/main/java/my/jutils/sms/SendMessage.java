@@ -2,21 +2,19 @@ package my.jutils.sms;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.atomic.*;
-import my.jutils.*;
-import org.joda.time.DateTime;
-import org.slf4j.*;
 import org.smslib.*;
 
 /**
  * SMS message sender utility.
+ * <p>
+ * These methods use the default {@link MessageSender}, which leaves the
+ * choice of the gateway to SMSLib. Use {@code MessageSender.of(gatewayId)}
+ * to send thru a specific gateway.
  *
  * @author Erieze and Einar Lagera
  */
 public class SendMessage extends OutboundMessage {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(SendMessage.class);
-
     /**
      * Send SMS message synchronously.
      *
@@ -28,30 +26,28 @@ public class SendMessage extends OutboundMessage {
      * @throws GatewayException Gateway error
      * @throws IOException Input/Output error
      * @throws InterruptedException Interrupted thread
+     * @see MessageSender#send(java.lang.String, java.lang.String, boolean)
      */
-    public synchronized static MessageStatuses send(String recipient, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
-        if (!SMSModule.isGatewayStarted()) {
-            return MessageStatuses.FAILED;
-        }
+    public static MessageStatuses send(String recipient, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        return MessageSender.getDefault().send(recipient, message, async);
+    }
 
-        final OutboundMessage msg = new OutboundMessage(recipient, message);
-        OutboundMessage.MessageStatuses status = msg.getMessageStatus();
-        if (async) { // Send a message asynchronously.
-            LOGGER.debug("Sending message asynchronously...");
-            status = SMSModule.SMS_SERVICE.queueMessage(msg) ? MessageStatuses.SENT : status;
-        } else { // Send a message synchronously.
-            LOGGER.debug("Sending message synchronously...");
-            status = SMSModule.SMS_SERVICE.sendMessage(msg) ? MessageStatuses.SENT : status;
-        }
-        System.out.println();
-        System.out.println("------------------------------- SENDING MESSAGE -------------------------------");
-        System.out.println("Date: " + Times.toDateFormat(msg.getDate(), "EEE MMM dd yyyy hh:mm:ss a"));
-        System.out.println("Status: " + status.name());
-        System.out.println("To: " + msg.getRecipient());
-        System.out.println("Text: " + msg.getText());
-        System.out.println("-------------------------------------------------------------------------------");
-        LOGGER.debug("Sending message status: {}", status.name());
-        return status;
+    /**
+     * Send SMS message thru the given gateway.
+     *
+     * @param recipient Recipient
+     * @param message Message to be sent
+     * @param async Send message asynchronously?
+     * @param gatewayId Id of the gateway
+     * @return Status of the message
+     * @throws TimeoutException Timeout error
+     * @throws GatewayException Gateway error
+     * @throws IOException Input/Output error
+     * @throws InterruptedException Interrupted thread
+     * @see MessageSender#of(java.lang.String)
+     */
+    public static MessageStatuses send(String recipient, String message, boolean async, String gatewayId) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        return MessageSender.of(gatewayId).send(recipient, message, async);
     }
 
     /**
@@ -65,35 +61,10 @@ public class SendMessage extends OutboundMessage {
      * @throws GatewayException Gateway error
      * @throws IOException Input/Output error
      * @throws InterruptedException Interrupted thread
+     * @see MessageSender#send(java.util.Collection, java.lang.String, boolean)
      */
-    public synchronized static MessageStatuses sends(Collection<String> recipients, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
-        if (!SMSModule.isGatewayStarted()) {
-            return MessageStatuses.FAILED;
-        }
-
-        OutboundMessage.MessageStatuses status = MessageStatuses.UNSENT;
-        final Collection<OutboundMessage> queues = new ArrayList<>();
-        for (String recipient : recipients) {
-            final OutboundMessage msg = new OutboundMessage(recipient, message);
-            status = msg.getMessageStatus();
-
-            System.out.println();
-            System.out.println("------------------------------- SENDING MESSAGE -------------------------------");
-            System.out.println("Date: " + Times.toDateFormat(new DateTime().toDate(), "EEE MMM dd yyyy hh:mm:ss a"));
-            System.out.println("To: " + recipients.toString());
-            System.out.println("Text: " + message);
-            System.out.println("-------------------------------------------------------------------------------");
-            queues.add(msg);
-        }
-        if (async) { // Send a message asynchronously.
-            LOGGER.debug("Sending messages asynchronously...");
-            status = SMSModule.SMS_SERVICE.queueMessages(queues) > 0 ? MessageStatuses.SENT : status;
-        } else { // Send a message synchronously.
-            LOGGER.debug("Sending messages synchronously...");
-            status = SMSModule.SMS_SERVICE.sendMessages(queues) > 0 ? MessageStatuses.SENT : status;
-        }
-        LOGGER.debug("Sending SMS messages status: {}", status.name());
-        return status;
+    public static MessageStatuses sends(Collection<String> recipients, String message, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        return MessageSender.getDefault().send(recipients, message, async);
     }
 
     /**
@@ -108,19 +79,10 @@ public class SendMessage extends OutboundMessage {
      * @throws GatewayException Gateway error
      * @throws IOException Input/Output error
      * @throws InterruptedException Interrupted thread
+     * @see MessageSender#sendBlast(java.lang.String, java.lang.String, int, boolean)
      */
-    public synchronized static MessageStatuses sendBlast(String recipient, String message, int noOfSend, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
-        final AtomicInteger ctr = new AtomicInteger();
-        final AtomicBoolean sent = new AtomicBoolean();
-        MessageStatuses status;
-        do {
-            sent.set((status = send(recipient, message, async)) == MessageStatuses.SENT);
-            LOGGER.info("[#{}] message sent...", ctr.get());
-        } while (sent.get() && ctr.getAndIncrement() < noOfSend);
-        if (!sent.get()) {
-            LOGGER.warn("Sending message stoppped at sequence [#{}]", ctr.get());
-        }
-        return status;
+    public static MessageStatuses sendBlast(String recipient, String message, int noOfSend, boolean async) throws TimeoutException, GatewayException, IOException, InterruptedException {
+        return MessageSender.getDefault().sendBlast(recipient, message, noOfSend, async);
     }
 
 }
@@ -0,0 +1,155 @@
+package my.jutils.sms;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jsmpp.bean.GSMSpecificFeature;
+import org.jsmpp.bean.SubmitSm;
+import org.jsmpp.util.DeliveryReceiptState;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SMPPModule} against the in-process {@link SMPPStub}.
+ *
+ * @author Erieze Lagera
+ */
+public class SMPPModuleTest {
+
+    private static final int WINDOW = 5;
+    private static final int ENQUIRE_LINK_INTERVAL = 200;
+
+    private SMPPStub stub;
+    private SMPPModule module;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new SMPPStub();
+        final int port = stub.getPort();
+        module = new SMPPModule() {
+            @Override
+            public String host() {
+                return "localhost";
+            }
+
+            @Override
+            public int port() {
+                return port;
+            }
+
+            @Override
+            public String systemId() {
+                return "test";
+            }
+
+            @Override
+            public String password() {
+                return "test";
+            }
+
+            @Override
+            public String systemType() {
+                return "";
+            }
+
+            @Override
+            public String sourceAddress() {
+                return "2600";
+            }
+
+            @Override
+            public int windowSize() {
+                return WINDOW;
+            }
+
+            @Override
+            public int enquireLinkInterval() {
+                return ENQUIRE_LINK_INTERVAL;
+            }
+        };
+        assertTrue(module.start());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        module.shutdown();
+        stub.close();
+    }
+
+    @Test
+    public void windowedSubmit() throws Exception {
+        stub.setResponseDelay(100);
+        final List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 4 * WINDOW; i++) {
+            recipients.add("6391700000" + i);
+        }
+        module.send(recipients, "Hello", false);
+        assertEquals(4 * WINDOW, module.getSent());
+        assertEquals(0, module.getFailed());
+        assertTrue("Window exceeded: " + stub.getMaxOutstanding(), stub.getMaxOutstanding() <= WINDOW);
+        assertTrue("Messages were not pipelined", stub.getMaxOutstanding() > 1);
+    }
+
+    @Test
+    public void enquireLinkKeepalive() throws Exception {
+        Thread.sleep(ENQUIRE_LINK_INTERVAL * 5);
+        assertTrue("enquire_link sent " + stub.getEnquireLinks() + " times", stub.getEnquireLinks() >= 2);
+        assertTrue(module.isBound());
+    }
+
+    @Test
+    public void receiptWithHexId() throws Exception {
+        assertReceiptMatched();
+    }
+
+    @Test
+    public void receiptWithDecimalId() throws Exception {
+        stub.setDecimalReceipts(true);
+        assertReceiptMatched();
+    }
+
+    private void assertReceiptMatched() throws Exception {
+        final Map<String, String> receipts = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        module.setReceiptListener(new SMPPModule.ReceiptListener() {
+            @Override
+            public void receiptReceived(String messageId, String recipient, DeliveryReceiptState state) {
+                receipts.put(messageId, recipient == null ? "" : recipient);
+                latch.countDown();
+            }
+        });
+        final Map<String, String> ids = new HashMap<>();
+        for (String recipient : Arrays.asList("639170000001", "639170000002", "639170000003")) {
+            ids.put(module.submit(recipient, "Hello").get(5, TimeUnit.SECONDS), recipient);
+        }
+        assertTrue("Receipts not received", latch.await(5, TimeUnit.SECONDS));
+        assertEquals(ids, receipts);
+        assertEquals(3, module.getDelivered());
+    }
+
+    @Test
+    public void longMessageIsSegmented() throws Exception {
+        final StringBuilder text = new StringBuilder("@$_");
+        while (text.length() < 200) {
+            text.append('x');
+        }
+        module.send("639170000001", text.toString(), false);
+        final List<SubmitSm> parts = stub.getSubmitted();
+        assertEquals(2, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            final byte[] bytes = parts.get(i).getShortMessage();
+            assertTrue(GSMSpecificFeature.UDHI.containedIn(parts.get(i).getEsmClass()));
+            assertEquals(0, parts.get(i).getDataCoding());
+            assertEquals(2, bytes[4]);
+            assertEquals(i + 1, bytes[5]);
+        }
+        // GSM 03.38 code points of @, $ and _ after the header
+        final byte[] first = parts.get(0).getShortMessage();
+        assertEquals(0x00, first[6]);
+        assertEquals(0x02, first[7]);
+        assertEquals(0x11, first[8]);
+        assertEquals(6 + 153, first.length);
+    }
+
+}
@@ -0,0 +1,169 @@
+package my.jutils.sms;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.*;
+import org.jsmpp.DefaultPDUReader;
+import org.jsmpp.DefaultPDUSender;
+import org.jsmpp.SMPPConstant;
+import org.jsmpp.bean.*;
+import org.jsmpp.util.*;
+
+/**
+ * In-process SMSC for the tests of {@link SMPPModule}.
+ * <p>
+ * Accepts one transceiver bind, answers every <i>submit_sm</i> after
+ * {@code responseDelay} millis and sends its delivery receipt right after.
+ * The message ids are given in hex in <i>submit_sm_resp</i>, and in hex or
+ * decimal in the receipt. Counts the <i>enquire_link</i> and the
+ * <i>submit_sm</i> waiting for their response.
+ *
+ * @author Erieze Lagera
+ */
+class SMPPStub implements Closeable {
+
+    private final ServerSocket server;
+    private final ExecutorService executor;
+    private final DefaultPDUReader reader = new DefaultPDUReader();
+    private final DefaultPDUSender sender = new DefaultPDUSender();
+    private final DefaultDecomposer decomposer = new DefaultDecomposer();
+
+    private final AtomicLong nextId = new AtomicLong(1000);
+    private final AtomicInteger enquireLinks = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger maxOutstanding = new AtomicInteger();
+    private final List<SubmitSm> submitted = Collections.synchronizedList(new ArrayList<SubmitSm>());
+
+    private volatile Socket socket;
+    private volatile long responseDelay;
+    private volatile boolean decimalReceipts;
+
+    SMPPStub() throws IOException {
+        this.server = new ServerSocket(0);
+        this.executor = Executors.newCachedThreadPool();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    SMPPStub setResponseDelay(long responseDelay) {
+        this.responseDelay = responseDelay;
+        return this;
+    }
+
+    SMPPStub setDecimalReceipts(boolean decimalReceipts) {
+        this.decimalReceipts = decimalReceipts;
+        return this;
+    }
+
+    int getEnquireLinks() {
+        return enquireLinks.get();
+    }
+
+    int getMaxOutstanding() {
+        return maxOutstanding.get();
+    }
+
+    List<SubmitSm> getSubmitted() {
+        synchronized (submitted) {
+            return new ArrayList<>(submitted);
+        }
+    }
+
+    private void accept() {
+        try (Socket accepted = server.accept()) {
+            socket = accepted;
+            final DataInputStream in = new DataInputStream(accepted.getInputStream());
+            final OutputStream out = accepted.getOutputStream();
+            while (true) {
+                final Command header = reader.readPDUHeader(in);
+                final byte[] pdu = reader.readPDU(in, header);
+                final int seq = header.getSequenceNumber();
+                switch (header.getCommandId()) {
+                    case SMPPConstant.CID_BIND_TRANSCEIVER:
+                        synchronized (out) {
+                            sender.sendBindResp(out, SMPPConstant.CID_BIND_TRANSCEIVER_RESP, seq, "stub");
+                        }
+                        break;
+                    case SMPPConstant.CID_ENQUIRE_LINK:
+                        enquireLinks.getAndIncrement();
+                        synchronized (out) {
+                            sender.sendEnquireLinkResp(out, seq);
+                        }
+                        break;
+                    case SMPPConstant.CID_SUBMIT_SM:
+                        submit(out, seq, decomposer.submitSm(pdu));
+                        break;
+                    case SMPPConstant.CID_UNBIND:
+                        synchronized (out) {
+                            sender.sendUnbindResp(out, SMPPConstant.STAT_ESME_ROK, seq);
+                        }
+                        return;
+                    case SMPPConstant.CID_DELIVER_SM_RESP:
+                    case SMPPConstant.CID_ENQUIRE_LINK_RESP:
+                        break;
+                    default:
+                        synchronized (out) {
+                            sender.sendGenericNack(out, SMPPConstant.STAT_ESME_RINVCMDID, seq);
+                        }
+                }
+            }
+        } catch (Exception e) {
+            // Closed by the test or by the module
+        }
+    }
+
+    private void submit(final OutputStream out, final int seq, final SubmitSm submitSm) {
+        submitted.add(submitSm);
+        final int current = outstanding.incrementAndGet();
+        int max;
+        while (current > (max = maxOutstanding.get()) && !maxOutstanding.compareAndSet(max, current)) {
+            // Retry until the maximum is updated
+        }
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(responseDelay);
+                    final long id = nextId.getAndIncrement();
+                    outstanding.decrementAndGet();
+                    synchronized (out) {
+                        sender.sendSubmitSmResp(out, seq, Long.toHexString(id));
+                    }
+                    final DeliveryReceipt receipt = new DeliveryReceipt(decimalReceipts ? Long.toString(id) : Long.toHexString(id),
+                            1, 1, new Date(), new Date(), DeliveryReceiptState.DELIVRD, "000", "");
+                    synchronized (out) {
+                        sender.sendDeliverSm(out, (int) id, "",
+                                TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, submitSm.getDestAddress(),
+                                TypeOfNumber.UNKNOWN, NumberingPlanIndicator.UNKNOWN, submitSm.getSourceAddr(),
+                                new ESMClass(MessageMode.DEFAULT, MessageType.SMSC_DEL_RECEIPT, GSMSpecificFeature.DEFAULT),
+                                (byte) 0, (byte) 0, new RegisteredDelivery(0), new GeneralDataCoding(), receipt.toString().getBytes("ISO-8859-1"));
+                    }
+                } catch (Exception e) {
+                    // Connection closed before the response
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        if (socket != null) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+
+}